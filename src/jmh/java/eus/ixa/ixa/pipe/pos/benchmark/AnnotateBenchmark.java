@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package eus.ixa.ixa.pipe.pos.benchmark;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eus.ixa.ixa.pipe.pos.Annotate;
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+
+/**
+ * Measures the annotation of a NAF document with {@link Annotate}, from the
+ * word forms to the serialized NAF, per sentence. The serialization of an
+ * already annotated document is also measured on its own.
+ *
+ * @author ragerri
+ * @version 2015-04-23
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnnotateBenchmark {
+
+  @Param({ "10", "30", "100" })
+  public int sentenceLength;
+
+  @Param({ "1", "3", "10" })
+  public int beamSize;
+
+  private Annotate annotator;
+  private String[][] sentences;
+  private KAFDocument annotated;
+
+  @Setup
+  public void setup() throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    final Properties properties = new Properties();
+    properties.setProperty("language", SyntheticData.LANG);
+    properties.setProperty("model", data.getModel().getAbsolutePath());
+    properties.setProperty("beamSize", Integer.toString(this.beamSize));
+    properties.setProperty("multiwords", "false");
+    properties.setProperty("dictag", "false");
+    properties.setProperty("lemmatizerDict", data.getMappedLemmaDictionary()
+        .getAbsolutePath());
+    this.annotator = new Annotate(properties);
+    this.sentences = data.tokens(SyntheticData.SENTENCES, this.sentenceLength);
+    this.annotated = SyntheticData.toNAF(this.sentences);
+    this.annotator.annotatePOSToKAF(this.annotated);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public String annotatePOSToKAF() {
+    final KAFDocument kaf = SyntheticData.toNAF(this.sentences);
+    this.annotator.annotatePOSToKAF(kaf);
+    return kaf.toString();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public String serializeNAF() {
+    return this.annotated.toString();
+  }
+
+}
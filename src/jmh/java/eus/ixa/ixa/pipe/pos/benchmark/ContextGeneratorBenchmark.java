@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package eus.ixa.ixa.pipe.pos.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+import eus.ixa.ixa.pipe.pos.train.BaselineContextGenerator;
+
+/**
+ * Measures the feature extraction of {@link BaselineContextGenerator} for
+ * every token of a sentence given the previous postags, per sentence.
+ *
+ * @author ragerri
+ * @version 2015-04-23
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextGeneratorBenchmark {
+
+  @Param({ "10", "30", "100" })
+  public int sentenceLength;
+
+  private BaselineContextGenerator contextGenerator;
+  private List<String[][]> sentences;
+
+  @Setup
+  public void setup() throws IOException {
+    this.contextGenerator = new BaselineContextGenerator(0, null);
+    this.sentences = SyntheticData.get().sentences(SyntheticData.SENTENCES,
+        this.sentenceLength, this.sentenceLength);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void getContext(final Blackhole blackhole) {
+    for (final String[][] sentence : this.sentences) {
+      for (int i = 0; i < sentence[0].length; i++) {
+        blackhole.consume(this.contextGenerator.getContext(i, sentence[0],
+            sentence[1], null));
+      }
+    }
+  }
+
+}
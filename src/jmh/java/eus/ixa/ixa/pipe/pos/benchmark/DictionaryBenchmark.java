@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package eus.ixa.ixa.pipe.pos.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eus.ixa.ixa.pipe.lemma.MappedLemmatizer;
+import eus.ixa.ixa.pipe.lemma.MorfologikLemmatizer;
+import eus.ixa.ixa.pipe.lemma.SimpleLemmatizer;
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+import eus.ixa.ixa.pipe.pos.dict.MorfologikMorphoTagger;
+
+/**
+ * Measures the dictionary lookups done for every token after tagging: the
+ * lemmatizers and the monosemic dictionary tagger, per sentence. The lemma
+ * cache is left out so that every lookup reaches the dictionary.
+ *
+ * @author ragerri
+ * @version 2015-04-23
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DictionaryBenchmark {
+
+  @Param({ "10", "30", "100" })
+  public int sentenceLength;
+
+  private MorfologikLemmatizer morfologikLemmatizer;
+  private SimpleLemmatizer simpleLemmatizer;
+  private MappedLemmatizer mappedLemmatizer;
+  private MorfologikMorphoTagger morfologikMorphoTagger;
+  private List<String[][]> sentences;
+
+  @Setup
+  public void setup() throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    this.morfologikLemmatizer = new MorfologikLemmatizer(data
+        .getMorfologikLemmaDictionary().toURI().toURL(), SyntheticData.LANG);
+    this.simpleLemmatizer = new SimpleLemmatizer(data.getLemmaDictionary(),
+        SyntheticData.LANG);
+    this.mappedLemmatizer = new MappedLemmatizer(
+        data.getMappedLemmaDictionary(), SyntheticData.LANG);
+    this.morfologikMorphoTagger = new MorfologikMorphoTagger(data
+        .getMorfologikTaggerDictionary().toURI().toURL(), SyntheticData.LANG);
+    this.sentences = data.sentences(SyntheticData.SENTENCES,
+        this.sentenceLength, this.sentenceLength);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void morfologikLemmatizer(final Blackhole blackhole) {
+    for (final String[][] sentence : this.sentences) {
+      for (int i = 0; i < sentence[0].length; i++) {
+        blackhole.consume(this.morfologikLemmatizer.lemmatize(sentence[0][i],
+            sentence[1][i]));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void simpleLemmatizer(final Blackhole blackhole) {
+    for (final String[][] sentence : this.sentences) {
+      for (int i = 0; i < sentence[0].length; i++) {
+        blackhole.consume(this.simpleLemmatizer.lemmatize(sentence[0][i],
+            sentence[1][i]));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void mappedLemmatizer(final Blackhole blackhole) {
+    for (final String[][] sentence : this.sentences) {
+      for (int i = 0; i < sentence[0].length; i++) {
+        blackhole.consume(this.mappedLemmatizer.lemmatize(sentence[0][i],
+            sentence[1][i]));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void morfologikMorphoTagger(final Blackhole blackhole) {
+    for (final String[][] sentence : this.sentences) {
+      for (int i = 0; i < sentence[0].length; i++) {
+        blackhole.consume(this.morfologikMorphoTagger.tag(sentence[0][i],
+            sentence[1][i]));
+      }
+    }
+  }
+
+}
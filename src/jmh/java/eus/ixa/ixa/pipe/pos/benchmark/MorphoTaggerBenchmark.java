@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package eus.ixa.ixa.pipe.pos.benchmark;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eus.ixa.ixa.pipe.pos.MorphoFactory;
+import eus.ixa.ixa.pipe.pos.MorphoTagger;
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+import eus.ixa.ixa.pipe.pos.TaggedSentence;
+
+/**
+ * Measures {@link MorphoTagger#getMorphemes(String[], int)}, the statistical
+ * tagging of a sentence, per sentence, against tagging into a recycled
+ * {@link TaggedSentence}.
+ *
+ * @author ragerri
+ * @version 2015-04-23
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MorphoTaggerBenchmark {
+
+  @Param({ "10", "30", "100" })
+  public int sentenceLength;
+
+  @Param({ "1", "3", "10" })
+  public int beamSize;
+
+  private MorphoTagger tagger;
+  private String[][] sentences;
+  private final TaggedSentence sentence = new TaggedSentence();
+
+  @Setup
+  public void setup() throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    final Properties properties = new Properties();
+    properties.setProperty("language", SyntheticData.LANG);
+    properties.setProperty("model", data.getModel().getAbsolutePath());
+    properties.setProperty("beamSize", Integer.toString(this.beamSize));
+    this.tagger = new MorphoTagger(properties, new MorphoFactory());
+    this.sentences = data.tokens(SyntheticData.SENTENCES, this.sentenceLength);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void getMorphemes(final Blackhole blackhole) {
+    for (final String[] tokens : this.sentences) {
+      blackhole.consume(this.tagger.getMorphemes(tokens, this.beamSize));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void tagSentence(final Blackhole blackhole) {
+    for (final String[] tokens : this.sentences) {
+      this.sentence.setTokens(tokens);
+      this.tagger.tag(this.sentence, this.beamSize);
+      blackhole.consume(this.sentence.getTag(0));
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+
+package eus.ixa.ixa.pipe.pos.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eus.ixa.ixa.pipe.lemma.MultiWordMatcher;
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+
+/**
+ * Measures {@link MultiWordMatcher#multiWordsToSpans(String[])} per sentence.
+ *
+ * @author ragerri
+ * @version 2015-04-23
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MultiWordBenchmark {
+
+  @Param({ "10", "30", "100" })
+  public int sentenceLength;
+
+  private MultiWordMatcher matcher;
+  private String[][] sentences;
+
+  @Setup
+  public void setup() throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    this.matcher = new MultiWordMatcher(data.getMultiWordDictionary());
+    this.sentences = data.tokens(SyntheticData.SENTENCES, this.sentenceLength);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SyntheticData.SENTENCES)
+  public void multiWordsToSpans(final Blackhole blackhole) {
+    for (final String[] tokens : this.sentences) {
+      blackhole.consume(this.matcher.multiWordsToSpans(tokens));
+    }
+  }
+
+}
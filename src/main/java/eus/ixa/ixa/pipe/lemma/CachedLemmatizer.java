@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lemma;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded cache of (word, postag) to lemma lookups in front of any
+ * {@link DictionaryLemmatizer}. Word and postag pairs follow a Zipfian
+ * distribution in running text, so most lookups are served from the cache.
+ * The cache is safe to use from several threads and evicts the least recently
+ * used entries when full. Words without lemma are cached too, so a null
+ * lemma is returned from the cache like any other.
+ *
+ * @author ragerri
+ * @version 2015-04-17
+ */
+public class CachedLemmatizer implements DictionaryLemmatizer {
+
+  /**
+   * The lemmatizer doing the actual lookups.
+   */
+  private final DictionaryLemmatizer lemmatizer;
+  /**
+   * The cache of lemmas.
+   */
+  private final Cache<LemmaKey, String> cache;
+  /**
+   * Stands for a null lemma in the cache, which does not take null values.
+   */
+  private static final String NO_LEMMA = new String();
+
+  /**
+   * Construct a cache in front of a lemmatizer.
+   *
+   * @param aLemmatizer
+   *          the lemmatizer doing the lookups
+   * @param maximumSize
+   *          the maximum number of (word, postag) pairs kept
+   */
+  public CachedLemmatizer(final DictionaryLemmatizer aLemmatizer,
+      final long maximumSize) {
+    this.lemmatizer = aLemmatizer;
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+        .recordStats().build();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * eus.ixa.ixa.pipe.lemma.DictionaryLemmatizer#lemmatize(java.lang.String,
+   * java.lang.String)
+   */
+  public String lemmatize(final String word, final String postag) {
+    final LemmaKey key = new LemmaKey(word, postag);
+    String lemma = this.cache.getIfPresent(key);
+    if (lemma == null) {
+      lemma = this.lemmatizer.lemmatize(word, postag);
+      this.cache.put(key, lemma == null ? NO_LEMMA : lemma);
+    } else if (lemma == NO_LEMMA) {
+      lemma = null;
+    }
+    return lemma;
+  }
+
+  /**
+   * Get the lemmatizer behind the cache.
+   *
+   * @return the lemmatizer
+   */
+  public final DictionaryLemmatizer getLemmatizer() {
+    return this.lemmatizer;
+  }
+
+  /**
+   * Get the hit, miss and eviction counts of the cache.
+   *
+   * @return the cache statistics
+   */
+  public final CacheStats getStats() {
+    return this.cache.stats();
+  }
+
+  /**
+   * Get the number of lookups served by the cache.
+   *
+   * @return the hit count
+   */
+  public final long getHitCount() {
+    return this.cache.stats().hitCount();
+  }
+
+  /**
+   * Get the number of lookups passed to the lemmatizer.
+   *
+   * @return the miss count
+   */
+  public final long getMissCount() {
+    return this.cache.stats().missCount();
+  }
+
+  /**
+   * Key of the cache: a word and its postag.
+   */
+  private static final class LemmaKey {
+
+    private final String word;
+    private final String postag;
+    private final int hash;
+
+    private LemmaKey(final String aWord, final String aPostag) {
+      this.word = aWord;
+      this.postag = aPostag;
+      this.hash = 31 * aWord.hashCode() + aPostag.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      } else if (obj instanceof LemmaKey) {
+        final LemmaKey other = (LemmaKey) obj;
+        return this.hash == other.hash && this.word.equals(other.word)
+            && this.postag.equals(other.postag);
+      } else {
+        return false;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lemma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact in memory (word, postag) to lemma dictionary. Words and lemmas are
+ * stored once in a string pool and referred to by integer ids, postags are
+ * interned to small integer ids and every entry is a packed (word id, postag
+ * id) long key in an open addressing table of primitive arrays. This avoids
+ * the list keys, map entries and duplicated strings of a
+ * {@code HashMap<List<String>, String>}.
+ *
+ * This class is not thread-safe for writing; once built it can be read from
+ * several threads.
+ *
+ * @author ragerri
+ * @version 2015-04-20
+ */
+public class LemmaDictionary {
+
+  /**
+   * Marks an empty slot in the entries table.
+   */
+  private static final long EMPTY = -1L;
+  /**
+   * Initial capacity of the tables; always a power of two.
+   */
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * The distinct words and lemmas, indexed by id.
+   */
+  private String[] strings = new String[INITIAL_CAPACITY / 2];
+  /**
+   * Number of strings in the pool.
+   */
+  private int numStrings;
+  /**
+   * Open addressing table of string ids plus one; zero marks an empty slot.
+   */
+  private int[] stringTable = new int[INITIAL_CAPACITY];
+  /**
+   * The postag ids.
+   */
+  private final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+  /**
+   * The postags, indexed by id.
+   */
+  private final List<String> tags = new ArrayList<String>();
+  /**
+   * Open addressing table of packed (word id, postag id) keys.
+   */
+  private long[] keys = newKeyTable(INITIAL_CAPACITY);
+  /**
+   * The lemma id of each key.
+   */
+  private int[] lemmas = new int[INITIAL_CAPACITY];
+  /**
+   * Number of entries.
+   */
+  private int size;
+
+  /**
+   * Visitor of the dictionary entries.
+   */
+  public interface EntryVisitor {
+
+    /**
+     * Visit an entry.
+     *
+     * @param word
+     *          the surface form
+     * @param postag
+     *          the postag
+     * @param lemma
+     *          the lemma
+     */
+    void visit(String word, String postag, String lemma);
+  }
+
+  /**
+   * Add an entry to the dictionary. An existing entry for the same word and
+   * postag is replaced.
+   *
+   * @param word
+   *          the surface form
+   * @param postag
+   *          the postag
+   * @param lemma
+   *          the lemma
+   */
+  public final void put(final String word, final String postag,
+      final String lemma) {
+    final long key = pack(internString(word), internTag(postag));
+    final int lemmaId = internString(lemma);
+    int slot = slot(mix(key), this.keys.length);
+    while (this.keys[slot] != EMPTY) {
+      if (this.keys[slot] == key) {
+        this.lemmas[slot] = lemmaId;
+        return;
+      }
+      slot = (slot + 1) & (this.keys.length - 1);
+    }
+    this.keys[slot] = key;
+    this.lemmas[slot] = lemmaId;
+    if (++this.size * 2 > this.keys.length) {
+      rehashEntries();
+    }
+  }
+
+  /**
+   * Get the lemma of a word and postag.
+   *
+   * @param word
+   *          the surface form
+   * @param postag
+   *          the postag
+   * @return the lemma or null if the entry does not exist
+   */
+  public final String get(final String word, final String postag) {
+    final Integer tagId = this.tagIds.get(postag);
+    if (tagId == null) {
+      return null;
+    }
+    final int wordId = findString(word);
+    if (wordId < 0) {
+      return null;
+    }
+    final long key = pack(wordId, tagId);
+    int slot = slot(mix(key), this.keys.length);
+    while (this.keys[slot] != EMPTY) {
+      if (this.keys[slot] == key) {
+        return this.strings[this.lemmas[slot]];
+      }
+      slot = (slot + 1) & (this.keys.length - 1);
+    }
+    return null;
+  }
+
+  /**
+   * Get the number of entries.
+   *
+   * @return the number of entries
+   */
+  public final int size() {
+    return this.size;
+  }
+
+  /**
+   * Visit every entry of the dictionary, in no particular order.
+   *
+   * @param visitor
+   *          the visitor
+   */
+  public final void visit(final EntryVisitor visitor) {
+    for (int slot = 0; slot < this.keys.length; slot++) {
+      final long key = this.keys[slot];
+      if (key != EMPTY) {
+        visitor.visit(this.strings[(int) (key >>> 32)],
+            this.tags.get((int) key), this.strings[this.lemmas[slot]]);
+      }
+    }
+  }
+
+  /**
+   * Get the id of a postag, adding it if new.
+   *
+   * @param postag
+   *          the postag
+   * @return the id
+   */
+  private int internTag(final String postag) {
+    Integer tagId = this.tagIds.get(postag);
+    if (tagId == null) {
+      tagId = this.tags.size();
+      this.tags.add(postag);
+      this.tagIds.put(postag, tagId);
+    }
+    return tagId;
+  }
+
+  /**
+   * Get the id of a string in the pool.
+   *
+   * @param string
+   *          the string
+   * @return the id or -1 if the string is not in the pool
+   */
+  private int findString(final String string) {
+    int slot = slot(string.hashCode(), this.stringTable.length);
+    int id;
+    while ((id = this.stringTable[slot]) != 0) {
+      if (this.strings[id - 1].equals(string)) {
+        return id - 1;
+      }
+      slot = (slot + 1) & (this.stringTable.length - 1);
+    }
+    return -1;
+  }
+
+  /**
+   * Get the id of a string in the pool, adding it if new.
+   *
+   * @param string
+   *          the string
+   * @return the id
+   */
+  private int internString(final String string) {
+    int slot = slot(string.hashCode(), this.stringTable.length);
+    int id;
+    while ((id = this.stringTable[slot]) != 0) {
+      if (this.strings[id - 1].equals(string)) {
+        return id - 1;
+      }
+      slot = (slot + 1) & (this.stringTable.length - 1);
+    }
+    if (this.numStrings == this.strings.length) {
+      this.strings = Arrays.copyOf(this.strings, this.strings.length * 2);
+    }
+    this.strings[this.numStrings] = string;
+    this.stringTable[slot] = ++this.numStrings;
+    if (this.numStrings * 2 > this.stringTable.length) {
+      rehashStrings();
+    }
+    return this.numStrings - 1;
+  }
+
+  /**
+   * Double the size of the string table.
+   */
+  private void rehashStrings() {
+    final int[] table = new int[this.stringTable.length * 2];
+    for (int id = 0; id < this.numStrings; id++) {
+      int slot = slot(this.strings[id].hashCode(), table.length);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (table.length - 1);
+      }
+      table[slot] = id + 1;
+    }
+    this.stringTable = table;
+  }
+
+  /**
+   * Double the size of the entries table.
+   */
+  private void rehashEntries() {
+    final long[] newKeys = newKeyTable(this.keys.length * 2);
+    final int[] newLemmas = new int[newKeys.length];
+    for (int i = 0; i < this.keys.length; i++) {
+      if (this.keys[i] != EMPTY) {
+        int slot = slot(mix(this.keys[i]), newKeys.length);
+        while (newKeys[slot] != EMPTY) {
+          slot = (slot + 1) & (newKeys.length - 1);
+        }
+        newKeys[slot] = this.keys[i];
+        newLemmas[slot] = this.lemmas[i];
+      }
+    }
+    this.keys = newKeys;
+    this.lemmas = newLemmas;
+  }
+
+  private static long[] newKeyTable(final int capacity) {
+    final long[] table = new long[capacity];
+    Arrays.fill(table, EMPTY);
+    return table;
+  }
+
+  /**
+   * Pack a word id and a postag id into a key.
+   *
+   * @param wordId
+   *          the word id
+   * @param tagId
+   *          the postag id
+   * @return the key
+   */
+  private static long pack(final int wordId, final int tagId) {
+    return (long) wordId << 32 | tagId;
+  }
+
+  /**
+   * Spread the bits of a key into a hash.
+   *
+   * @param key
+   *          the key
+   * @return the hash
+   */
+  private static int mix(final long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int) h;
+  }
+
+  /**
+   * Get the first slot of a hash in a power of two sized table.
+   *
+   * @param hash
+   *          the hash
+   * @param length
+   *          the length of the table
+   * @return the slot
+   */
+  private static int slot(final int hash, final int length) {
+    return (hash ^ hash >>> 16) & (length - 1);
+  }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.lemma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eus.ixa.ixa.pipe.pos.Resources;
+import eus.ixa.ixa.pipe.pos.StringUtils;
+
+/**
+ * Lemmatizer over a binary dictionary memory mapped from disk. The dictionary
+ * is read in place through the page cache, so loading takes no time and
+ * several processes using the same file share one copy of it in memory.
+ *
+ * The binary format, created with
+ * {@link #compile(InputStream, File)}, is: a header with the magic number,
+ * the format version, the number of postags, entries and characters; the
+ * postags, each as a short length followed by its characters; the entries,
+ * sorted by word and postag id, each as the word offset, lemma offset, word
+ * length, lemma length and postag id (16 bytes); and the characters of every
+ * distinct word and lemma.
+ *
+ * @author ragerri
+ * @version 2015-04-21
+ */
+public class MappedLemmatizer implements DictionaryLemmatizer {
+
+  /**
+   * Magic number of the binary dictionaries.
+   */
+  public static final int MAGIC = 0x49584C44;
+  /**
+   * Version of the binary format.
+   */
+  private static final int VERSION = 1;
+  /**
+   * Size in bytes of an entry.
+   */
+  private static final int ENTRY_SIZE = 16;
+
+  /**
+   * The mapped dictionary.
+   */
+  private final MappedByteBuffer buffer;
+  /**
+   * The postag ids.
+   */
+  private final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+  /**
+   * Number of entries.
+   */
+  private final int numEntries;
+  /**
+   * Position of the first entry.
+   */
+  private final int entriesStart;
+  /**
+   * Position of the first character.
+   */
+  private final int charsStart;
+  /**
+   * The class dealing with loading the proper dictionary.
+   */
+  private final Resources tagRetriever = new Resources();
+  /**
+   * The language.
+   */
+  private final String lang;
+
+  /**
+   * Map a binary dictionary.
+   *
+   * @param dictionary
+   *          the binary dictionary file
+   * @param aLang
+   *          the language
+   * @throws IOException
+   *           if the file can not be mapped or is not a binary dictionary
+   */
+  public MappedLemmatizer(final File dictionary, final String aLang)
+      throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(dictionary, "r");
+    try {
+      this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+          file.length());
+    } finally {
+      file.close();
+    }
+    if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+      throw new IOException(dictionary
+          + " is not a binary lemmatizer dictionary!");
+    }
+    final int numTags = this.buffer.getInt(8);
+    this.numEntries = this.buffer.getInt(12);
+    int position = 20;
+    for (int tagId = 0; tagId < numTags; tagId++) {
+      final int length = this.buffer.getShort(position);
+      position += 2;
+      final char[] tag = new char[length];
+      for (int i = 0; i < length; i++) {
+        tag[i] = this.buffer.getChar(position);
+        position += 2;
+      }
+      this.tagIds.put(new String(tag), tagId);
+    }
+    this.entriesStart = position;
+    this.charsStart = position + this.numEntries * ENTRY_SIZE;
+    this.lang = aLang;
+  }
+
+  /**
+   * Check whether a file is a binary lemmatizer dictionary.
+   *
+   * @param dictionary
+   *          the file
+   * @return true if the file starts with the magic number
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static boolean isMappedDictionary(final File dictionary)
+      throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(dictionary, "r");
+    try {
+      return file.length() >= 4 && file.readInt() == MAGIC;
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Get the lemma of a word and postag.
+   *
+   * @param word
+   *          the surface form
+   * @param postag
+   *          the postag
+   * @return the lemma or null if the entry does not exist
+   */
+  public final String get(final String word, final String postag) {
+    final Integer tagId = this.tagIds.get(postag);
+    if (tagId == null) {
+      return null;
+    }
+    int low = 0;
+    int high = this.numEntries - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int entry = this.entriesStart + middle * ENTRY_SIZE;
+      int cmp = compareWord(entry, word);
+      if (cmp == 0) {
+        cmp = this.buffer.getInt(entry + 12) - tagId;
+      }
+      if (cmp < 0) {
+        low = middle + 1;
+      } else if (cmp > 0) {
+        high = middle - 1;
+      } else {
+        final int lemmaOffset = this.buffer.getInt(entry + 4);
+        final int lemmaLength = this.buffer.getShort(entry + 10);
+        final char[] lemma = new char[lemmaLength];
+        for (int i = 0; i < lemmaLength; i++) {
+          lemma[i] = this.buffer.getChar(this.charsStart + (lemmaOffset + i) * 2);
+        }
+        return new String(lemma);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compare in place the word of an entry with a word.
+   *
+   * @param entry
+   *          the position of the entry
+   * @param word
+   *          the word
+   * @return the comparison as in {@link String#compareTo(String)}
+   */
+  private int compareWord(final int entry, final String word) {
+    final int offset = this.charsStart + this.buffer.getInt(entry) * 2;
+    final int length = this.buffer.getShort(entry + 8);
+    final int minLength = Math.min(length, word.length());
+    for (int i = 0; i < minLength; i++) {
+      final char c = this.buffer.getChar(offset + i * 2);
+      if (c != word.charAt(i)) {
+        return c - word.charAt(i);
+      }
+    }
+    return length - word.length();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * eus.ixa.ixa.pipe.lemma.DictionaryLemmatizer#lemmatize(java.lang.String,
+   * java.lang.String)
+   */
+  public String lemmatize(final String word, final String postag) {
+    String lemma = null;
+    final String constantTag = this.tagRetriever.setTagConstant(this.lang,
+        postag);
+    final boolean isConstant = postag.startsWith(String.valueOf(constantTag));
+    final String lookupWord = isConstant ? word : word.toLowerCase();
+    final String keyValue = get(lookupWord, postag);
+    if (keyValue != null) {
+      lemma = keyValue;
+    } else if (isConstant) {
+      lemma = word;
+    } else if (StringUtils.isUpperCase(word)) {
+      lemma = word;
+    } else {
+      lemma = lookupWord;
+    }
+    return lemma;
+  }
+
+  /**
+   * Compile a tabulated dictionary, containing word\tablemma\tabpostag in each
+   * line, into the binary format.
+   *
+   * @param textDictionary
+   *          the tabulated dictionary
+   * @param output
+   *          the binary dictionary file
+   * @throws IOException
+   *           if the dictionary can not be read or written
+   */
+  public static void compile(final InputStream textDictionary,
+      final File output) throws IOException {
+    final LemmaDictionary dictionary = new LemmaDictionary();
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        textDictionary, Charset.forName("UTF-8")));
+    String line;
+    while ((line = breader.readLine()) != null) {
+      final String[] elems = line.split("\t");
+      if (elems.length == 3) {
+        dictionary.put(elems[0], elems[2], elems[1]);
+      } else {
+        System.err.println("WARNING: line starting with " + elems[0]
+            + " is not well-formed; skipping!!");
+      }
+    }
+    write(dictionary, output);
+  }
+
+  /**
+   * Write a dictionary in the binary format.
+   *
+   * @param dictionary
+   *          the dictionary
+   * @param output
+   *          the binary dictionary file
+   * @throws IOException
+   *           if the file can not be written
+   */
+  public static void write(final LemmaDictionary dictionary, final File output)
+      throws IOException {
+    final List<String[]> entries = new ArrayList<String[]>(dictionary.size());
+    dictionary.visit(new LemmaDictionary.EntryVisitor() {
+      public void visit(final String word, final String postag,
+          final String lemma) {
+        entries.add(new String[] { word, postag, lemma });
+      }
+    });
+    // postag ids follow the order of the postags
+    final List<String> tags = new ArrayList<String>();
+    final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+    for (final String[] entry : entries) {
+      if (!tagIds.containsKey(entry[1])) {
+        tagIds.put(entry[1], 0);
+        tags.add(entry[1]);
+      }
+    }
+    Collections.sort(tags);
+    for (int tagId = 0; tagId < tags.size(); tagId++) {
+      tagIds.put(tags.get(tagId), tagId);
+    }
+    Collections.sort(entries, new Comparator<String[]>() {
+      public int compare(final String[] first, final String[] second) {
+        final int cmp = first[0].compareTo(second[0]);
+        return cmp != 0 ? cmp : first[1].compareTo(second[1]);
+      }
+    });
+    // every distinct word and lemma is stored once
+    final StringBuilder chars = new StringBuilder();
+    final Map<String, Integer> offsets = new HashMap<String, Integer>();
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(output)));
+    try {
+      final int[] stringOffsets = new int[entries.size() * 2];
+      for (int i = 0; i < entries.size(); i++) {
+        stringOffsets[2 * i] = addChars(entries.get(i)[0], chars, offsets);
+        stringOffsets[2 * i + 1] = addChars(entries.get(i)[2], chars, offsets);
+      }
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(tags.size());
+      out.writeInt(entries.size());
+      out.writeInt(chars.length());
+      for (final String tag : tags) {
+        out.writeShort(checkLength(tag));
+        out.writeChars(tag);
+      }
+      for (int i = 0; i < entries.size(); i++) {
+        final String[] entry = entries.get(i);
+        out.writeInt(stringOffsets[2 * i]);
+        out.writeInt(stringOffsets[2 * i + 1]);
+        out.writeShort(checkLength(entry[0]));
+        out.writeShort(checkLength(entry[2]));
+        out.writeInt(tagIds.get(entry[1]));
+      }
+      out.writeChars(chars.toString());
+    } finally {
+      out.close();
+    }
+  }
+
+  private static int addChars(final String string, final StringBuilder chars,
+      final Map<String, Integer> offsets) {
+    Integer offset = offsets.get(string);
+    if (offset == null) {
+      offset = chars.length();
+      chars.append(string);
+      offsets.put(string, offset);
+    }
+    return offset;
+  }
+
+  private static int checkLength(final String string) {
+    if (string.length() > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Dictionary string too long: "
+          + string.substring(0, 20) + "...");
+    }
+    return string.length();
+  }
+
+}
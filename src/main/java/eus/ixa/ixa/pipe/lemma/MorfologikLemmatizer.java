@@ -18,16 +18,13 @@ package eus.ixa.ixa.pipe.lemma;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
 
 import morfologik.stemming.Dictionary;
 import morfologik.stemming.DictionaryLookup;
 import morfologik.stemming.IStemmer;
 import morfologik.stemming.WordData;
 import eus.ixa.ixa.pipe.pos.Resources;
+import eus.ixa.ixa.pipe.pos.StringUtils;
 
 /**
  * Lemmatizer based on Morfologik Stemming library. It requires a FSA Morfologik
@@ -41,9 +38,11 @@ public class MorfologikLemmatizer implements
     eus.ixa.ixa.pipe.lemma.DictionaryLemmatizer {
 
   /**
-   * The Morfologik steamer to perform lemmatization with FSA dictionaries.
+   * The Morfologik steamer to perform lemmatization with FSA dictionaries. The
+   * {@link DictionaryLookup} reuses its buffers, so every thread gets its own
+   * lookup over the shared dictionary.
    */
-  private final IStemmer dictLookup;
+  private final ThreadLocal<IStemmer> dictLookup;
   /**
    * The class dealing with loading the default dictionaries.
    */
@@ -67,73 +66,16 @@ public class MorfologikLemmatizer implements
    */
   public MorfologikLemmatizer(final URL dictURL, final String aLang)
       throws IOException {
-    this.dictLookup = new DictionaryLookup(Dictionary.read(dictURL));
+    final Dictionary dictionary = Dictionary.read(dictURL);
+    this.dictLookup = new ThreadLocal<IStemmer>() {
+      @Override
+      protected IStemmer initialValue() {
+        return new DictionaryLookup(dictionary);
+      }
+    };
     this.lang = aLang;
   }
 
-  /**
-   * Get the lemma for a surface form word and a postag from a FSA morfologik
-   * generated dictionary.
-   * 
-   * @param word
-   *          the surface form
-   * @return the hashmap with the word and tag as keys and the lemma as value
-   */
-  private HashMap<List<String>, String> getLemmaTagsDict(final String word) {
-    final List<WordData> wdList = this.dictLookup.lookup(word);
-    final HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
-    for (final WordData wd : wdList) {
-      final List<String> wordLemmaTags = new ArrayList<String>();
-      wordLemmaTags.add(word);
-      wordLemmaTags.add(wd.getTag().toString());
-      dictMap.put(wordLemmaTags, wd.getStem().toString());
-    }
-    return dictMap;
-  }
-
-  /**
-   * Generate the dictionary keys (word, postag).
-   * 
-   * @param word
-   *          the surface form
-   * @param postag
-   *          the assigned postag
-   * @return a list of keys consisting of the word and its postag
-   */
-  private List<String> getDictKeys(final String word, final String postag) {
-    final List<String> keys = new ArrayList<String>();
-    final String constantTag = this.tagRetriever.setTagConstant(this.lang,
-        postag);
-    if (postag.startsWith(String.valueOf(constantTag))) {
-      keys.addAll(Arrays.asList(word, postag));
-    } else {
-      keys.addAll(Arrays.asList(word.toLowerCase(), postag));
-    }
-    return keys;
-  }
-
-  /**
-   * Generates the dictionary map.
-   * 
-   * @param word
-   *          the surface form word
-   * @param postag
-   *          the postag assigned by the pos tagger
-   * @return the hash map dictionary
-   */
-  private HashMap<List<String>, String> getDictMap(final String word,
-      final String postag) {
-    HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
-    final String constantTag = this.tagRetriever.setTagConstant(this.lang,
-        postag);
-    if (postag.startsWith(String.valueOf(constantTag))) {
-      dictMap = this.getLemmaTagsDict(word);
-    } else {
-      dictMap = this.getLemmaTagsDict(word.toLowerCase());
-    }
-    return dictMap;
-  }
-
   /*
    * (non-Javadoc)
    * 
@@ -142,22 +84,27 @@ public class MorfologikLemmatizer implements
    * , java.lang.String, java.lang.String)
    */
   public String lemmatize(final String word, final String postag) {
-    String lemma = null;
-    final List<String> keys = this.getDictKeys(word, postag);
-    final HashMap<List<String>, String> dictMap = this.getDictMap(word, postag);
-    // lookup lemma as value of the map
-    final String keyValue = dictMap.get(keys);
     final String constantTag = this.tagRetriever.setTagConstant(this.lang,
         postag);
-    if (keyValue != null) {
-      lemma = keyValue;
-    } else if (keyValue == null
-        && postag.startsWith(String.valueOf(constantTag))) {
+    final boolean isConstant = postag.startsWith(String.valueOf(constantTag));
+    final String lookupWord = isConstant ? word : word.toLowerCase();
+    // scan the lookup results in place, comparing the tags without copying
+    // them; if several entries share the tag the last one is taken
+    WordData lemmaData = null;
+    for (final WordData wd : this.dictLookup.get().lookup(lookupWord)) {
+      if (postag.contentEquals(wd.getTag())) {
+        lemmaData = wd;
+      }
+    }
+    String lemma = null;
+    if (lemmaData != null) {
+      lemma = lemmaData.getStem().toString();
+    } else if (isConstant) {
       lemma = word;
-    } else if (keyValue == null && word.toUpperCase().equals(word)) {
+    } else if (StringUtils.isUpperCase(word)) {
       lemma = word;
     } else {
-      lemma = word.toLowerCase();
+      lemma = lookupWord;
     }
     return lemma;
   }
@@ -19,22 +19,19 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import opennlp.tools.util.Span;
 
 import com.google.common.base.Joiner;
 
-import eus.ixa.ixa.pipe.pos.StringUtils;
+import eus.ixa.ixa.pipe.pos.DictionaryRegistry;
 
 /**
  * Reads a dictionary multiword\tmultiwordlemma\tpostag\tambiguity and matches
@@ -48,10 +45,12 @@ public class MultiWordMatcher {
 
   private static final Pattern tabPattern = Pattern.compile("\t");
   private static final Pattern linePattern = Pattern.compile("#");
-  private static Map<String, String> dictionary;
+  private final MultiWordTrie dictionary;
 
   /**
-   * Construct a multiword matcher with a dictionary for a given language.
+   * Construct a multiword matcher with a dictionary for a given language. The
+   * dictionary of each language is shared through the
+   * {@link DictionaryRegistry}.
    * 
    * @param props
    *          the properties options
@@ -59,9 +58,20 @@ public class MultiWordMatcher {
    *           throw exception is files does not exist
    */
   public MultiWordMatcher(final Properties props) throws IOException {
-    if (dictionary == null) {
-      loadDictionary(props);
-    }
+    this.dictionary = loadDictionary(props);
+  }
+
+  /**
+   * Construct a multiword matcher with its own dictionary.
+   * 
+   * @param dictInputStream
+   *          the multiword dictionary
+   * @throws IOException
+   *           if the dictionary can not be read
+   */
+  public MultiWordMatcher(final InputStream dictInputStream)
+      throws IOException {
+    this.dictionary = readDictionary(dictInputStream);
   }
 
   /**
@@ -69,32 +79,60 @@ public class MultiWordMatcher {
    * 
    * @param props
    *          the properties object
+   * @return the multiword dictionary
    * @throws IOException
    *           if io problems
    */
-  private void loadDictionary(final Properties props) throws IOException {
-    dictionary = new HashMap<String, String>();
+  private MultiWordTrie loadDictionary(final Properties props)
+      throws IOException {
     final String lang = props.getProperty("language");
-    final InputStream dictInputStream = getMultiWordDict(lang);
-    if (dictInputStream == null) {
+    final URL dictURL = getMultiWordDict(lang);
+    if (dictURL == null) {
       System.err.println("ERROR: Not multiword dictionary for language " + lang
           + " in src/main/resources!!");
       System.exit(1);
     }
+    return DictionaryRegistry.getInstance().get(
+        DictionaryRegistry.Type.MULTIWORD, lang, dictURL,
+        new DictionaryRegistry.Loader<MultiWordTrie>() {
+          public MultiWordTrie load() throws IOException {
+            final InputStream dictInputStream = dictURL.openStream();
+            try {
+              return readDictionary(dictInputStream);
+            } finally {
+              dictInputStream.close();
+            }
+          }
+        });
+  }
+
+  /**
+   * Read a multiword dictionary.
+   * 
+   * @param dictInputStream
+   *          the dictionary
+   * @return the multiword dictionary
+   * @throws IOException
+   *           if io problems
+   */
+  private static MultiWordTrie readDictionary(
+      final InputStream dictInputStream) throws IOException {
+    final MultiWordTrie dictionary = new MultiWordTrie();
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
         dictInputStream, Charset.forName("UTF-8")));
     String line;
     while ((line = breader.readLine()) != null) {
       final String[] lineArray = tabPattern.split(line);
       if (lineArray.length == 4) {
-        final Matcher lineMatcher = linePattern.matcher(lineArray[0]
+        final String[] multiWordTokens = linePattern.split(lineArray[0]
             .toLowerCase());
-        dictionary.put(lineMatcher.replaceAll(" "), lineArray[2]);
+        dictionary.put(multiWordTokens, lineArray[2]);
       } else {
         System.err.println("WARNING: line starting with " + lineArray[0]
             + " is not well-formed; skipping!!");
       }
     }
+    return dictionary;
   }
 
   /**
@@ -102,17 +140,17 @@ public class MultiWordMatcher {
    * 
    * @param lang
    *          the language
-   * @return the inputstream of the dictionary
+   * @return the location of the dictionary
    */
-  private final InputStream getMultiWordDict(final String lang) {
-    InputStream dict = null;
+  private final URL getMultiWordDict(final String lang) {
+    URL dict = null;
     // TODO complete locutions dictionary and binarize
     if (lang.equalsIgnoreCase("es")) {
-      dict = getClass().getResourceAsStream(
+      dict = getClass().getResource(
           "/lemmatizer-dicts/freeling/es-locutions.txt");
     }
     if (lang.equalsIgnoreCase("gl")) {
-      dict = getClass().getResourceAsStream(
+      dict = getClass().getResource(
           "/lemmatizer-dicts/ctag/gl-locutions.txt");
     }
     return dict;
@@ -149,52 +187,39 @@ public class MultiWordMatcher {
   }
 
   /**
-   * Detects multiword expressions ignoring case.
+   * Detects multiword expressions ignoring case. The longest multiword starting
+   * at each token is taken and the search continues after its last token.
    * 
    * @param tokens
    *          the tokenized sentence
    * @return spans of the multiword
    */
   public final Span[] multiWordsToSpans(final String[] tokens) {
-    final List<Span> multiWordsFound = new LinkedList<Span>();
-
-    for (int offsetFrom = 0; offsetFrom < tokens.length; offsetFrom++) {
-      Span multiwordFound = null;
-      String tokensSearching[] = new String[] {};
-
-      for (int offsetTo = offsetFrom; offsetTo < tokens.length; offsetTo++) {
-
-        final int lengthSearching = offsetTo - offsetFrom + 1;
-        if (lengthSearching > getMaxTokenCount()) {
-          break;
-        } else {
-          tokensSearching = new String[lengthSearching];
-          System.arraycopy(tokens, offsetFrom, tokensSearching, 0,
-              lengthSearching);
-
-          final String entryForSearch = StringUtils
-              .getStringFromTokens(tokensSearching);
-          final String entryValue = dictionary
-              .get(entryForSearch.toLowerCase());
-          if (entryValue != null) {
-            multiwordFound = new Span(offsetFrom, offsetTo + 1, entryValue);
-          }
-        }
-      }
+    final List<Span> multiWordsFound = new ArrayList<Span>();
+    final String[] lowerCaseTokens = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      lowerCaseTokens[i] = tokens[i].toLowerCase();
+    }
+    int offsetFrom = 0;
+    while (offsetFrom < lowerCaseTokens.length) {
+      final Span multiwordFound = this.dictionary.longestMatch(lowerCaseTokens,
+          offsetFrom);
       if (multiwordFound != null) {
         multiWordsFound.add(multiwordFound);
-        offsetFrom += multiwordFound.length() - 1;
+        offsetFrom = multiwordFound.getEnd();
+      } else {
+        offsetFrom++;
       }
     }
     return multiWordsFound.toArray(new Span[multiWordsFound.size()]);
   }
 
   /**
-   * Get the key,value size of the dictionary.
+   * Get the length, in tokens, of the longest multiword in the dictionary.
    * 
    * @return maximum token count in the dictionary
    */
   public int getMaxTokenCount() {
-    return dictionary.size();
+    return this.dictionary.getMaxTokenCount();
   }
 }
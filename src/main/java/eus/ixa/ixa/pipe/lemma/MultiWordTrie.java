@@ -0,0 +1,146 @@
+/*
+ *Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.lemma;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import opennlp.tools.util.Span;
+
+/**
+ * Token level trie of multiword expressions. Every edge of the trie is a
+ * (lowercased) token and every node ending a multiword keeps its postag, so
+ * that the longest multiword starting at a given token is found with one walk
+ * over the sentence and without building any candidate string.
+ *
+ * @author ragerri
+ * @version 2015-04-14
+ */
+public class MultiWordTrie {
+
+  /**
+   * The root of the trie.
+   */
+  private final Node root = new Node();
+  /**
+   * Number of multiwords in the trie.
+   */
+  private int size;
+  /**
+   * Length, in tokens, of the longest multiword in the trie.
+   */
+  private int maxTokenCount;
+
+  /**
+   * Add a multiword to the trie. If the multiword already exists its postag is
+   * replaced.
+   *
+   * @param tokens
+   *          the lowercased tokens of the multiword
+   * @param postag
+   *          the postag of the multiword
+   */
+  public final void put(final String[] tokens, final String postag) {
+    Node node = this.root;
+    for (final String token : tokens) {
+      node = node.getOrCreateChild(token);
+    }
+    if (node.postag == null) {
+      this.size++;
+    }
+    node.postag = postag;
+    this.maxTokenCount = Math.max(this.maxTokenCount, tokens.length);
+  }
+
+  /**
+   * Find the longest multiword starting at a given token.
+   *
+   * @param tokens
+   *          the lowercased tokens of the sentence
+   * @param offsetFrom
+   *          the index of the first token of the multiword
+   * @return the span of the longest multiword, with its postag as type, or
+   *         null if no multiword starts at offsetFrom
+   */
+  public final Span longestMatch(final String[] tokens, final int offsetFrom) {
+    Node node = this.root;
+    Node lastMatch = null;
+    int lastMatchEnd = -1;
+    for (int offsetTo = offsetFrom; offsetTo < tokens.length; offsetTo++) {
+      node = node.getChild(tokens[offsetTo]);
+      if (node == null) {
+        break;
+      }
+      if (node.postag != null) {
+        lastMatch = node;
+        lastMatchEnd = offsetTo + 1;
+      }
+    }
+    if (lastMatch == null) {
+      return null;
+    }
+    return new Span(offsetFrom, lastMatchEnd, lastMatch.postag);
+  }
+
+  /**
+   * Get the number of multiwords in the trie.
+   *
+   * @return the number of multiwords
+   */
+  public final int size() {
+    return this.size;
+  }
+
+  /**
+   * Get the length of the longest multiword in the trie.
+   *
+   * @return the maximum token count
+   */
+  public final int getMaxTokenCount() {
+    return this.maxTokenCount;
+  }
+
+  /**
+   * A node of the trie.
+   */
+  private static class Node {
+
+    /**
+     * The children of this node, keyed by token. Null for leaves.
+     */
+    private Map<String, Node> children;
+    /**
+     * The postag if a multiword ends in this node, null otherwise.
+     */
+    private String postag;
+
+    private Node getChild(final String token) {
+      return this.children == null ? null : this.children.get(token);
+    }
+
+    private Node getOrCreateChild(final String token) {
+      if (this.children == null) {
+        this.children = new HashMap<String, Node>(4);
+      }
+      Node child = this.children.get(token);
+      if (child == null) {
+        child = new Node();
+        this.children.put(token, child);
+      }
+      return child;
+    }
+  }
+}
@@ -20,26 +20,26 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
 import eus.ixa.ixa.pipe.pos.Resources;
+import eus.ixa.ixa.pipe.pos.StringUtils;
 
 /**
- * Lemmatize by simple dictionary lookup into a hashmap built from a file
- * containing, for each line, word\tablemma\tabpostag.
+ * Lemmatize by simple dictionary lookup into a compact {@link LemmaDictionary}
+ * built from a file containing, for each line, word\tablemma\tabpostag.
  * 
  * @author ragerri
- * @version 2014-07-08
+ * @version 2015-04-20
  */
 public class SimpleLemmatizer implements DictionaryLemmatizer {
 
   /**
-   * The hashmap containing the dictionary.
+   * The dictionary.
    */
-  private final HashMap<List<String>, String> dictMap;
+  private final LemmaDictionary dictionary;
   /**
    * The class dealing with loading the proper dictionary.
    */
@@ -50,7 +50,7 @@ public class SimpleLemmatizer implements DictionaryLemmatizer {
   private final String lang;
 
   /**
-   * Construct a hashmap from the input tab separated dictionary.
+   * Construct a compact dictionary from the input tab separated dictionary.
    * 
    * The input file should have, for each line, word\tablemma\tabpostag
    * 
@@ -60,14 +60,14 @@ public class SimpleLemmatizer implements DictionaryLemmatizer {
    *          the language
    */
   public SimpleLemmatizer(final InputStream dictionary, final String aLang) {
-    this.dictMap = new HashMap<List<String>, String>();
+    this.dictionary = new LemmaDictionary();
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
         dictionary));
     String line;
     try {
       while ((line = breader.readLine()) != null) {
         final String[] elems = line.split("\t");
-        this.dictMap.put(Arrays.asList(elems[0], elems[2]), elems[1]);
+        this.dictionary.put(elems[0], elems[2], elems[1]);
       }
     } catch (final IOException e) {
       e.printStackTrace();
@@ -76,33 +76,31 @@ public class SimpleLemmatizer implements DictionaryLemmatizer {
   }
 
   /**
-   * Get the Map containing the dictionary.
+   * Get the compact dictionary.
    * 
-   * @return dictMap the Map
+   * @return the dictionary
    */
-  public HashMap<List<String>, String> getDictMap() {
-    return this.dictMap;
+  public LemmaDictionary getDictionary() {
+    return this.dictionary;
   }
 
   /**
-   * Get the dictionary keys (word and postag).
+   * Get a Map containing the dictionary. The map is built on every call.
    * 
-   * @param word
-   *          the surface form word
-   * @param postag
-   *          the assigned postag
-   * @return returns the dictionary keys
+   * @return dictMap the Map
+   * @deprecated use {@link #getDictionary()}, which does not copy the
+   *             dictionary
    */
-  private List<String> getDictKeys(final String word, final String postag) {
-    final String constantTag = this.tagRetriever.setTagConstant(this.lang,
-        postag);
-    final List<String> keys = new ArrayList<String>();
-    if (postag.startsWith(String.valueOf(constantTag))) {
-      keys.addAll(Arrays.asList(word, postag));
-    } else {
-      keys.addAll(Arrays.asList(word.toLowerCase(), postag));
-    }
-    return keys;
+  @Deprecated
+  public HashMap<List<String>, String> getDictMap() {
+    final HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
+    this.dictionary.visit(new LemmaDictionary.EntryVisitor() {
+      public void visit(final String word, final String postag,
+          final String lemma) {
+        dictMap.put(Arrays.asList(word, postag), lemma);
+      }
+    });
+    return dictMap;
   }
 
   /*
@@ -116,18 +114,18 @@ public class SimpleLemmatizer implements DictionaryLemmatizer {
     String lemma = null;
     final String constantTag = this.tagRetriever.setTagConstant(this.lang,
         postag);
-    final List<String> keys = this.getDictKeys(word, postag);
-    // lookup lemma as value of the map
-    final String keyValue = this.dictMap.get(keys);
+    final boolean isConstant = postag.startsWith(String.valueOf(constantTag));
+    final String lookupWord = isConstant ? word : word.toLowerCase();
+    // lookup lemma as value of the dictionary
+    final String keyValue = this.dictionary.get(lookupWord, postag);
     if (keyValue != null) {
       lemma = keyValue;
-    } else if (keyValue == null
-        && postag.startsWith(String.valueOf(constantTag))) {
+    } else if (isConstant) {
       lemma = word;
-    } else if (keyValue == null && word.toUpperCase().equals(word)) {
+    } else if (StringUtils.isUpperCase(word)) {
       lemma = word;
     } else {
-      lemma = word.toLowerCase();
+      lemma = lookupWord;
     }
     return lemma;
   }
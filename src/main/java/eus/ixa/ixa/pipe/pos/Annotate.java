@@ -19,14 +19,25 @@ import ixa.kaflib.KAFDocument;
 import ixa.kaflib.Term;
 import ixa.kaflib.WF;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
 
 import opennlp.tools.util.Span;
+import eus.ixa.ixa.pipe.lemma.CachedLemmatizer;
 import eus.ixa.ixa.pipe.lemma.DictionaryLemmatizer;
+import eus.ixa.ixa.pipe.lemma.MappedLemmatizer;
 import eus.ixa.ixa.pipe.lemma.MorfologikLemmatizer;
 import eus.ixa.ixa.pipe.lemma.MultiWordMatcher;
 import eus.ixa.ixa.pipe.pos.dict.DictionaryTagger;
@@ -34,12 +45,26 @@ import eus.ixa.ixa.pipe.pos.dict.MorfologikMorphoTagger;
 
 /**
  * Main annotation class of ixa-pipe-pos. Check this class for examples using the ixa-pipe-pos API.
+ * The annotation methods can be called concurrently: the models and dictionaries are loaded once
+ * and shared, and every thread tags with its own decoder over them.
  *
  * @author ragerri
  * @version 2014-12-05
  */
 public class Annotate {
 
+    /**
+     * Maximum number of sentences annotated sequentially by a fork-join task.
+     */
+    private static final int SENTENCES_PER_TASK = 4;
+    /**
+     * Default maximum number of (word, postag) pairs in the lemma cache.
+     */
+    public static final String DEFAULT_LEMMA_CACHE_SIZE = "100000";
+    /**
+     * Separates the tokens of tokenized text.
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
     /**
      * The morpho tagger.
      */
@@ -72,10 +97,23 @@ public class Annotate {
      * The monosemic dictionary postagger.
      */
     private DictionaryTagger dictMorphoTagger;
+    /**
+     * The postags of the model.
+     */
+    private final TagAlphabet tagAlphabet;
+    /**
+     * The mapping of the postags to the NAF pos tagset.
+     */
+    private final TagSetMapping tagSetMapping;
     /**
      * The directory where the dictionaries and models will be searched
      */
     private String directory = null;
+    /**
+     * The pool tagging the sentences of a document in parallel, null if sentences
+     * are tagged sequentially.
+     */
+    private final ForkJoinPool sentencePool;
 
     /**
      * Construct an annotator with a {@code MorphoFactory}.
@@ -99,41 +137,128 @@ public class Annotate {
         loadLemmatizerDicts(properties);
         this.morphoFactory = new MorphoFactory();
         this.posTagger = new MorphoTagger(properties, this.morphoFactory);
+        try {
+            this.tagSetMapping = loadTagSetMapping(properties);
+            this.tagAlphabet = this.posTagger.getTagAlphabet();
+            this.tagSetMapping.precompute(this.tagAlphabet);
+            final int parallel = properties.getProperty("parallel") == null ? 1 : Integer
+                    .parseInt(properties.getProperty("parallel"));
+            this.sentencePool = parallel > 1 ? new ForkJoinPool(parallel) : null;
+        } catch (final IOException e) {
+            // release the model acquired by the tagger
+            this.posTagger.close();
+            throw e;
+        } catch (final RuntimeException e) {
+            this.posTagger.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Release the model and stop the sentence pool. The annotator must not be
+     * used afterwards.
+     */
+    public final void close() {
+        this.posTagger.close();
+        if (this.sentencePool != null) {
+            this.sentencePool.shutdown();
+        }
+    }
+
+    /**
+     * Load the mapping of the postags to the NAF pos tagset: the mapping file given
+     * by the tagsetMapping property or else the one distributed for the language.
+     * If there is none, every postag is mapped to {@value TagSetMapping#DEFAULT_POS}.
+     *
+     * @param props the props object
+     * @return the tagset mapping
+     * @throws IOException if the mapping file can not be read
+     */
+    private TagSetMapping loadTagSetMapping(final Properties props) throws IOException {
+        final String mappingFile = props.getProperty("tagsetMapping");
+        if (mappingFile != null) {
+            final InputStream mappingInputStream = new FileInputStream(mappingFile);
+            try {
+                return new TagSetMapping(mappingInputStream);
+            } finally {
+                mappingInputStream.close();
+            }
+        }
+        final TagSetMapping mapping = TagSetMapping.getMapping(this.lang);
+        if (mapping == null) {
+            System.err.println("WARNING: No tagset mapping available for language "
+                    + this.lang + "; every postag is mapped to "
+                    + TagSetMapping.DEFAULT_POS + " in NAF!!");
+            return new TagSetMapping();
+        }
+        return mapping;
     }
 
-    // TODO static loading of lemmatizer dictionaries
     /**
      * Load the binary lemmatizer dictionaries by language. Exits if no lemmatizer dictionary
-     * (binary) is available for the input language.
+     * (binary) is available for the input language. If the lemmatizerDict property is set,
+     * that dictionary, compiled with the compile subcommand, is memory mapped instead. The
+     * dictionaries are shared through the {@link DictionaryRegistry}. Unless the
+     * lemmaCacheSize property is 0, lookups go through a {@link CachedLemmatizer}.
      *
      * @param props the props object
      */
     private void loadLemmatizerDicts(final Properties props) {
-        final Resources resources = new Resources();
-        final URL binLemmatizerURL;
-        if (directory == null) {
-            binLemmatizerURL = resources.getBinaryDict(this.lang);
+        final String mappedDict = props.getProperty("lemmatizerDict");
+        if (mappedDict != null) {
+            final File mappedDictFile = new File(mappedDict);
+            try {
+                this.dictLemmatizer = DictionaryRegistry.getInstance().get(
+                        DictionaryRegistry.Type.LEMMATIZER, this.lang,
+                        mappedDictFile.toURI().toURL(),
+                        new DictionaryRegistry.Loader<DictionaryLemmatizer>() {
+                            public DictionaryLemmatizer load() throws IOException {
+                                return new MappedLemmatizer(mappedDictFile, Annotate.this.lang);
+                            }
+                        });
+            } catch (final IOException e) {
+                System.err.println("ERROR: Could not map lemmatizer dictionary "
+                        + mappedDict + ": " + e.getMessage());
+                System.exit(1);
+            }
         } else {
-            binLemmatizerURL = resources.getBinaryDictFromDir(directory, this.lang);
-        }
-        if (binLemmatizerURL == null) {
-            System.err
-                    .println("ERROR: No binary lemmatizer dictionary available for language "
-                            + this.lang + " in src/main/resources!!");
-            System.exit(1);
+            final Resources resources = new Resources();
+            final URL binLemmatizerURL;
+            if (directory == null) {
+                binLemmatizerURL = resources.getBinaryDict(this.lang);
+            } else {
+                binLemmatizerURL = resources.getBinaryDictFromDir(directory, this.lang);
+            }
+            if (binLemmatizerURL == null) {
+                System.err
+                        .println("ERROR: No binary lemmatizer dictionary available for language "
+                                + this.lang + " in src/main/resources!!");
+                System.exit(1);
+            }
+            try {
+                this.dictLemmatizer = DictionaryRegistry.getInstance().get(
+                        DictionaryRegistry.Type.LEMMATIZER, this.lang, binLemmatizerURL,
+                        new DictionaryRegistry.Loader<DictionaryLemmatizer>() {
+                            public DictionaryLemmatizer load() throws IOException {
+                                return new MorfologikLemmatizer(binLemmatizerURL,
+                                        Annotate.this.lang);
+                            }
+                        });
+            } catch (final IOException e) {
+                e.printStackTrace();
+            }
         }
-        try {
-            this.dictLemmatizer = new MorfologikLemmatizer(binLemmatizerURL,
-                    this.lang);
-        } catch (final IOException e) {
-            e.printStackTrace();
+        final long lemmaCacheSize = Long.parseLong(props.getProperty("lemmaCacheSize",
+                DEFAULT_LEMMA_CACHE_SIZE));
+        if (lemmaCacheSize > 0) {
+            this.dictLemmatizer = new CachedLemmatizer(this.dictLemmatizer, lemmaCacheSize);
         }
     }
 
-    // TODO static loading of postag dictionaries
     /**
      * Load the pos tagger dictionaries by language and format. Exits if no pos tagger dictionary
-     * (binary) is available for the input language.
+     * (binary) is available for the input language. The dictionaries are shared through the
+     * {@link DictionaryRegistry}.
      *
      * @param props the props object
      */
@@ -153,184 +278,215 @@ public class Annotate {
             System.exit(1);
         }
         try {
-            this.dictMorphoTagger = new MorfologikMorphoTagger(
-                    binDictMorphoTaggerURL, this.lang);
+            this.dictMorphoTagger = DictionaryRegistry.getInstance().get(
+                    DictionaryRegistry.Type.MORPHO_TAGGER, this.lang, binDictMorphoTaggerURL,
+                    new DictionaryRegistry.Loader<DictionaryTagger>() {
+                        public DictionaryTagger load() throws IOException {
+                            return new MorfologikMorphoTagger(binDictMorphoTaggerURL,
+                                    Annotate.this.lang);
+                        }
+                    });
         } catch (final IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Mapping between Penn Treebank tagset and KAF tagset.
+     * Annotate morphological information into a NAF document. If the annotator was
+     * built with more than one parallel thread, the sentences are tagged concurrently
+     * and the terms are afterwards added to the document in the original order, so
+     * that the output is the same as with the sequential annotation.
      *
-     * @param postag treebank postag
-     * @return kaf POS tag
-     */
-    private String mapEnglishTagSetToKaf(final String postag) {
-        if (postag.startsWith("RB")) {
-            return "A"; // adverb
-        } else if (postag.equalsIgnoreCase("CC")) {
-            return "C"; // conjunction
-        } else if (postag.startsWith("D") || postag.equalsIgnoreCase("PDT")) {
-            return "D"; // determiner and predeterminer
-        } else if (postag.startsWith("J")) {
-            return "G"; // adjective
-        } else if (postag.equalsIgnoreCase("NN") || postag.equalsIgnoreCase("NNS")) {
-            return "N"; // common noun
-        } else if (postag.startsWith("NNP")) {
-            return "R"; // proper noun
-        } else if (postag.equalsIgnoreCase("TO") || postag.equalsIgnoreCase("IN")) {
-            return "P"; // preposition
-        } else if (postag.startsWith("PRP") || postag.startsWith("WP")) {
-            return "Q"; // pronoun
-        } else if (postag.startsWith("V")) {
-            return "V"; // verb
-        } else {
-            return "O"; // other
-        }
+     * @param kaf the NAF document
+     */
+    public final void annotatePOSToKAF(final KAFDocument kaf) {
+        annotatePOSToKAF(kaf, this.posTagger.getBeamSize());
     }
 
     /**
-     * Mapping between EAGLES PAROLE tagset and NAF.
+     * Annotate morphological information into a NAF document decoding with a given
+     * beam size instead of the one the annotator was built with.
      *
-     * @param postag the postag
-     * @return the mapping to NAF pos tagset
-     */
-    private String mapSpanishTagSetToKaf(final String postag) {
-        if (postag.equalsIgnoreCase("RG") || postag.equalsIgnoreCase("RN")) {
-            return "A"; // adverb
-        } else if (postag.equalsIgnoreCase("CC") || postag.equalsIgnoreCase("CS")) {
-            return "C"; // conjunction
-        } else if (postag.startsWith("D")) {
-            return "D"; // det predeterminer
-        } else if (postag.startsWith("A")) {
-            return "G"; // adjective
-        } else if (postag.startsWith("NC")) {
-            return "N"; // common noun
-        } else if (postag.startsWith("NP")) {
-            return "R"; // proper noun
-        } else if (postag.startsWith("SP")) {
-            return "P"; // preposition
-        } else if (postag.startsWith("P")) {
-            return "Q"; // pronoun
-        } else if (postag.startsWith("V")) {
-            return "V"; // verb
+     * @param kaf the NAF document
+     * @param beamSize the beam size for decoding, 1 for greedy decoding
+     */
+    public final void annotatePOSToKAF(final KAFDocument kaf, final int beamSize) {
+        final List<List<WF>> sentences = kaf.getSentences();
+        if (this.sentencePool == null) {
+            for (final List<WF> wfs : sentences) {
+                addTerms(kaf, annotateSentence(wfs, beamSize));
+            }
         } else {
-            return "O"; // other
+            for (final SentenceAnnotation annotation : annotateSentences(sentences,
+                    beamSize)) {
+                addTerms(kaf, annotation);
+            }
         }
     }
 
     /**
-     * Mapping between CTAG tagset and NAF.
+     * Tag, post-process and lemmatize the sentences of a document concurrently in
+     * the sentence pool.
      *
-     * @param postag the postag
-     * @return the mapping to NAF pos tagset
-     */
-    private String mapGalicianTagSetToKaf(final String postag) {
-        if (postag.startsWith("R")) {
-            return "A"; // adverb
-        } else if (postag.equalsIgnoreCase("CC") || postag.equalsIgnoreCase("CS")) {
-            return "C"; // conjunction
-        } else if (postag.startsWith("D") || postag.startsWith("G")
-                || postag.startsWith("X") || postag.startsWith("Q")
-                || postag.startsWith("T") || postag.startsWith("I")
-                || postag.startsWith("M")) {
-            return "D"; // det predeterminer
-        } else if (postag.startsWith("A")) {
-            return "G"; // adjective
-        } else if (postag.startsWith("NC")) {
-            return "N"; // common noun
-        } else if (postag.startsWith("NP")) {
-            return "R"; // proper noun
-        } else if (postag.startsWith("S")) {
-            return "P"; // preposition
-        } else if (postag.startsWith("P")) {
-            return "Q"; // pronoun
-        } else if (postag.startsWith("V")) {
-            return "V"; // verb
-        } else {
-            return "O"; // other
-        }
+     * @param sentences the word forms of every sentence
+     * @param beamSize the beam size for decoding
+     * @return the annotation of every sentence, in document order
+     */
+    private SentenceAnnotation[] annotateSentences(final List<List<WF>> sentences,
+            final int beamSize) {
+        final SentenceAnnotation[] annotations = new SentenceAnnotation[sentences.size()];
+        this.sentencePool.invoke(new SentenceTask(sentences, annotations, beamSize, 0,
+                sentences.size()));
+        return annotations;
     }
 
     /**
-     * Obtain the appropriate tagset according to language and postag.
+     * Tag, post-process and lemmatize a sentence.
      *
-     * @param postag the postag
-     * @return the mapped tag
+     * @param wfs the word forms of the sentence
+     * @param beamSize the beam size for decoding
+     * @return the morphemes of the sentence and the word form span of each morpheme
      */
-    private String getKafTagSet(final String postag) {
-        String tag = null;
-        if (this.lang.equalsIgnoreCase("en")) {
-            tag = this.mapEnglishTagSetToKaf(postag);
-        }
-        if (this.lang.equalsIgnoreCase("es")) {
-            tag = this.mapSpanishTagSetToKaf(postag);
+    private SentenceAnnotation annotateSentence(final List<WF> wfs, final int beamSize) {
+        final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
+        final List<Morpheme> morphemes;
+        // Get an array of token forms from a list of WF objects.
+        final String[] tokens = new String[wfs.size()];
+        for (int i = 0; i < wfs.size(); i++) {
+            tokens[i] = wfs.get(i).getForm();
+            final List<WF> wfTarget = new ArrayList<WF>();
+            wfTarget.add(wfs.get(i));
+            tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
         }
-        if (this.lang.equalsIgnoreCase("gl")) {
-            tag = this.mapGalicianTagSetToKaf(postag);
+        morphemes = annotateTokens(tokens, beamSize);
+        if (this.multiwords) {
+            getMultiWordSpans(tokens, wfs, tokenSpans);
         }
-        return tag;
+        return new SentenceAnnotation(tokenSpans, morphemes);
     }
 
     /**
-     * Set the term type attribute based on the pos value.
+     * Tag, post-process and lemmatize a tokenized sentence. If multiwords are
+     * detected, each multiword is one morpheme whose tokens are joined by '#'.
      *
-     * @param postag the postag
-     * @return the type
+     * @param tokens the tokens of the sentence
+     * @return the morphemes of the sentence
+     */
+    public final List<Morpheme> annotateTokens(final String[] tokens) {
+        return annotateTokens(tokens, this.posTagger.getBeamSize());
+    }
+
+    /**
+     * Tag, post-process and lemmatize a tokenized sentence decoding with a given
+     * beam size.
+     *
+     * @param tokens the tokens of the sentence
+     * @param beamSize the beam size for decoding, 1 for greedy decoding
+     * @return the morphemes of the sentence
      */
-    private String setTermType(final String postag) {
-        if (postag.startsWith("N") || postag.startsWith("V")
-                || postag.startsWith("G") || postag.startsWith("A")) {
-            return "open";
+    public final List<Morpheme> annotateTokens(final String[] tokens, final int beamSize) {
+        List<Morpheme> morphemes = null;
+        if (this.multiwords) {
+            final String[] multiWordTokens = this.multiWordMatcher
+                    .getTokensWithMultiWords(tokens);
+            morphemes = this.posTagger.getMorphemes(multiWordTokens, beamSize);
         } else {
-            return "close";
+            morphemes = this.posTagger.getMorphemes(tokens, beamSize);
+        }
+        for (final Morpheme morpheme : morphemes) {
+            if (this.dictag) {
+                final String dictPosTag = this.dictMorphoTagger.tag(morpheme.getWord(),
+                        morpheme.getTag());
+                if (!dictPosTag.equals(morpheme.getTag())) {
+                    setTag(morpheme, dictPosTag);
+                }
+            }
+            final String lemma = this.dictLemmatizer.lemmatize(morpheme.getWord(),
+                    morpheme.getTag());
+            morpheme.setLemma(lemma);
         }
+        return morphemes;
     }
 
     /**
-     * Annotate morphological information into a NAF document.
+     * Tag, post-process and lemmatize the tokens of a reusable
+     * {@link TaggedSentence}. If multiwords are detected, the tokens of the
+     * sentence are replaced by the tokens with the multiwords joined by '#'.
      *
-     * @param kaf the NAF document
+     * @param sentence the sentence
      */
-    public final void annotatePOSToKAF(final KAFDocument kaf) {
-        final List<List<WF>> sentences = kaf.getSentences();
-        for (final List<WF> wfs : sentences) {
-
-            final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
-            List<Morpheme> morphemes = null;
-            final String[] tokens = new String[wfs.size()];
-            for (int i = 0; i < wfs.size(); i++) {
-                tokens[i] = wfs.get(i).getForm();
-                final List<WF> wfTarget = new ArrayList<WF>();
-                wfTarget.add(wfs.get(i));
-                tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
+    public final void annotateTokens(final TaggedSentence sentence) {
+        annotateTokens(sentence, this.posTagger.getBeamSize());
+    }
+
+    /**
+     * Tag, post-process and lemmatize the tokens of a reusable
+     * {@link TaggedSentence} decoding with a given beam size.
+     *
+     * @param sentence the sentence
+     * @param beamSize the beam size for decoding, 1 for greedy decoding
+     */
+    public final void annotateTokens(final TaggedSentence sentence, final int beamSize) {
+        if (this.multiwords) {
+            sentence.setTokens(this.multiWordMatcher
+                    .getTokensWithMultiWords(sentence.getTokens()));
+        }
+        this.posTagger.tag(sentence, beamSize);
+        for (int i = 0; i < sentence.size(); i++) {
+            if (this.dictag) {
+                final String dictPosTag = this.dictMorphoTagger.tag(sentence.getToken(i),
+                        sentence.getTag(i));
+                if (!dictPosTag.equals(sentence.getTag(i))) {
+                    final int tagId = this.tagAlphabet.getId(dictPosTag);
+                    sentence.setTag(i, tagId == TagAlphabet.UNKNOWN
+                            ? dictPosTag.toUpperCase() : this.tagAlphabet.getTag(tagId), tagId);
+                }
             }
-            if (this.multiwords) {
-                final String[] multiWordTokens = this.multiWordMatcher
-                        .getTokensWithMultiWords(tokens);
-                morphemes = this.posTagger.getMorphemes(multiWordTokens);
-                getMultiWordSpans(tokens, wfs, tokenSpans);
+            sentence.setLemma(i, this.dictLemmatizer.lemmatize(sentence.getToken(i),
+                    sentence.getTag(i)));
+        }
+    }
+
+    /**
+     * Add the terms of an annotated sentence to the NAF document.
+     *
+     * @param kaf the NAF document
+     * @param annotation the annotated sentence
+     */
+    private void addTerms(final KAFDocument kaf, final SentenceAnnotation annotation) {
+        final List<Morpheme> morphemes = annotation.morphemes;
+        for (int i = 0; i < morphemes.size(); i++) {
+            final Morpheme morpheme = morphemes.get(i);
+            final Term term = kaf.newTerm(annotation.tokenSpans.get(i));
+            final int tagId = morpheme.getTagId();
+            final String posId;
+            final String type;
+            if (tagId == TagAlphabet.UNKNOWN) {
+                posId = this.tagSetMapping.getPos(morpheme.getTag());
+                type = this.tagSetMapping.getTermType(morpheme.getTag());
             } else {
-                morphemes = this.posTagger.getMorphemes(tokens);
-            }
-            for (int i = 0; i < morphemes.size(); i++) {
-                final Term term = kaf.newTerm(tokenSpans.get(i));
-                if (this.dictag) {
-                    final String dictPosTag = this.dictMorphoTagger.tag(morphemes.get(i)
-                            .getWord(), morphemes.get(i).getTag());
-                    morphemes.get(i).setTag(dictPosTag);
-                }
-                final String posId = this.getKafTagSet(morphemes.get(i).getTag());
-                final String type = this.setTermType(posId);
-                final String lemma = this.dictLemmatizer.lemmatize(morphemes.get(i)
-                        .getWord(), morphemes.get(i).getTag());
-                morphemes.get(i).setLemma(lemma);
-                term.setType(type);
-                term.setLemma(morphemes.get(i).getLemma());
-                term.setPos(posId);
-                term.setMorphofeat(morphemes.get(i).getTag());
+                posId = this.tagSetMapping.getPos(tagId);
+                type = this.tagSetMapping.getTermType(tagId);
             }
+            term.setType(type);
+            term.setLemma(morpheme.getLemma());
+            term.setPos(posId);
+            term.setMorphofeat(morpheme.getTag());
+        }
+    }
+
+    /**
+     * Set a new postag of a morpheme, with its id if it is a postag of the model.
+     *
+     * @param morpheme the morpheme
+     * @param postag the postag
+     */
+    private void setTag(final Morpheme morpheme, final String postag) {
+        final int tagId = this.tagAlphabet.getId(postag);
+        if (tagId == TagAlphabet.UNKNOWN) {
+            morpheme.setTag(postag);
+        } else {
+            morpheme.setTag(this.tagAlphabet.getTag(tagId), tagId);
         }
     }
 
@@ -375,42 +531,222 @@ public class Annotate {
      */
     public final String annotatePOSToCoNLL(final KAFDocument kaf)
             throws IOException {
-        final StringBuilder sb = new StringBuilder();
+        return annotatePOSToCoNLL(kaf, this.posTagger.getBeamSize());
+    }
+
+    /**
+     * Annotate morphological information in tabulated CoNLL-style format decoding
+     * with a given beam size instead of the one the annotator was built with.
+     *
+     * @param kaf the naf input document
+     * @param beamSize the beam size for decoding, 1 for greedy decoding
+     * @return the text annotated in tabulated format
+     * @throws IOException throws io exception
+     */
+    public final String annotatePOSToCoNLL(final KAFDocument kaf, final int beamSize)
+            throws IOException {
+        final StringWriter writer = new StringWriter();
+        annotatePOSToCoNLL(kaf, beamSize, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Annotate morphological information in tabulated CoNLL-style format, writing
+     * every sentence as soon as it is tagged instead of building the whole output
+     * in memory.
+     *
+     * @param kaf the naf input document
+     * @param writer the writer of the annotated text
+     * @throws IOException if the writer fails
+     */
+    public final void annotatePOSToCoNLL(final KAFDocument kaf, final Writer writer)
+            throws IOException {
+        annotatePOSToCoNLL(kaf, this.posTagger.getBeamSize(), writer);
+    }
+
+    /**
+     * Annotate morphological information in tabulated CoNLL-style format decoding
+     * with a given beam size, writing every sentence as soon as it is tagged. If
+     * the annotator was built with more than one parallel thread, the sentences
+     * are tagged concurrently as in {@link #annotatePOSToKAF(KAFDocument, int)}
+     * and written in the original order once all of them are tagged.
+     *
+     * @param kaf the naf input document
+     * @param beamSize the beam size for decoding, 1 for greedy decoding
+     * @param writer the writer of the annotated text
+     * @throws IOException if the writer fails
+     */
+    public final void annotatePOSToCoNLL(final KAFDocument kaf, final int beamSize,
+            final Writer writer) throws IOException {
         final List<List<WF>> sentences = kaf.getSentences();
-        for (final List<WF> wfs : sentences) {
-
-            final List<ixa.kaflib.Span<WF>> tokenSpans = new ArrayList<ixa.kaflib.Span<WF>>();
-            List<Morpheme> morphemes = null;
-            // Get an array of token forms from a list of WF objects.
-            final String[] tokens = new String[wfs.size()];
-            for (int i = 0; i < wfs.size(); i++) {
-                tokens[i] = wfs.get(i).getForm();
-                final List<WF> wfTarget = new ArrayList<WF>();
-                wfTarget.add(wfs.get(i));
-                tokenSpans.add(KAFDocument.newWFSpan(wfTarget));
+        if (this.sentencePool == null) {
+            for (final List<WF> wfs : sentences) {
+                writeCoNLL(annotateSentence(wfs, beamSize).morphemes, writer);
             }
-            if (this.multiwords) {
-                final String[] multiWordTokens = this.multiWordMatcher
-                        .getTokensWithMultiWords(tokens);
-                morphemes = this.posTagger.getMorphemes(multiWordTokens);
-                getMultiWordSpans(tokens, wfs, tokenSpans);
-            } else {
-                morphemes = this.posTagger.getMorphemes(tokens);
+        } else {
+            for (final SentenceAnnotation annotation : annotateSentences(sentences,
+                    beamSize)) {
+                writeCoNLL(annotation.morphemes, writer);
             }
-            for (int i = 0; i < morphemes.size(); i++) {
-                final String posTag = morphemes.get(i).getTag();
-                final String word = morphemes.get(i).getWord();
-                if (this.dictag) {
-                    final String dictPosTag = this.dictMorphoTagger.tag(word, posTag);
-                    morphemes.get(i).setTag(dictPosTag);
+        }
+    }
+
+    /**
+     * Annotate tokenized text, one sentence per line with whitespace separated
+     * tokens, in tabulated CoNLL-style format. The text is read and written one
+     * sentence at a time, so memory use does not grow with the size of the text.
+     * Empty lines are skipped.
+     *
+     * @param breader the reader of the tokenized text
+     * @param writer the writer of the annotated text
+     * @throws IOException if the text can not be read or written
+     */
+    public final void annotateTokensToCoNLL(final BufferedReader breader,
+            final Writer writer) throws IOException {
+        String line;
+        while ((line = breader.readLine()) != null) {
+            final String[] tokens = tokenize(line);
+            if (tokens.length > 0) {
+                writeCoNLL(annotateTokens(tokens), writer);
+            }
+        }
+    }
+
+    /**
+     * Annotate tokenized text, one sentence per line with whitespace separated
+     * tokens, as JSON lines: every sentence is written as one line containing an
+     * object with a "tokens" array of objects with the "word", "lemma" and "tag"
+     * of each token. Empty lines are skipped.
+     *
+     * @param breader the reader of the tokenized text
+     * @param writer the writer of the annotated text
+     * @throws IOException if the text can not be read or written
+     */
+    public final void annotateTokensToJSON(final BufferedReader breader,
+            final Writer writer) throws IOException {
+        String line;
+        while ((line = breader.readLine()) != null) {
+            final String[] tokens = tokenize(line);
+            if (tokens.length > 0) {
+                writeJSON(annotateTokens(tokens), writer);
+            }
+        }
+    }
+
+    /**
+     * Split a line of tokenized text into its tokens.
+     *
+     * @param line the line
+     * @return the tokens, none if the line is empty
+     */
+    private static String[] tokenize(final String line) {
+        final String trimmed = line.trim();
+        if (trimmed.length() == 0) {
+            return new String[0];
+        }
+        return WHITESPACE.split(trimmed);
+    }
+
+    /**
+     * Write the morphemes of a sentence as one JSON line.
+     *
+     * @param morphemes the morphemes of the sentence
+     * @param writer the writer
+     * @throws IOException if the writer fails
+     */
+    private static void writeJSON(final List<Morpheme> morphemes, final Writer writer)
+            throws IOException {
+        writer.write("{\"tokens\":[");
+        for (int i = 0; i < morphemes.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"word\":");
+            StringUtils.writeJSONString(writer, morphemes.get(i).getWord());
+            writer.write(",\"lemma\":");
+            StringUtils.writeJSONString(writer, morphemes.get(i).getLemma());
+            writer.write(",\"tag\":");
+            StringUtils.writeJSONString(writer, morphemes.get(i).getTag());
+            writer.write('}');
+        }
+        writer.write("]}\n");
+    }
+
+    /**
+     * Write the morphemes of a sentence in tabulated CoNLL-style format, one per
+     * line followed by an empty line.
+     *
+     * @param morphemes the morphemes of the sentence
+     * @param writer the writer
+     * @throws IOException if the writer fails
+     */
+    private static void writeCoNLL(final List<Morpheme> morphemes, final Writer writer)
+            throws IOException {
+        for (final Morpheme morpheme : morphemes) {
+            writer.write(morpheme.getWord());
+            writer.write('\t');
+            // words without lemma get "null", as in the original output
+            writer.write(String.valueOf(morpheme.getLemma()));
+            writer.write('\t');
+            writer.write(morpheme.getTag());
+            writer.write('\n');
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * The result of annotating a sentence: its morphemes and the word form span of
+     * each of them.
+     */
+    private static class SentenceAnnotation {
+
+        private final List<ixa.kaflib.Span<WF>> tokenSpans;
+        private final List<Morpheme> morphemes;
+
+        private SentenceAnnotation(final List<ixa.kaflib.Span<WF>> aTokenSpans,
+                final List<Morpheme> aMorphemes) {
+            this.tokenSpans = aTokenSpans;
+            this.morphemes = aMorphemes;
+        }
+    }
+
+    /**
+     * Fork-join task annotating a range of sentences. Ranges are split in halves
+     * until they are small enough to be annotated sequentially.
+     */
+    private class SentenceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final List<List<WF>> sentences;
+        private final SentenceAnnotation[] annotations;
+        private final int beamSize;
+        private final int from;
+        private final int to;
+
+        private SentenceTask(final List<List<WF>> aSentences,
+                final SentenceAnnotation[] anAnnotations, final int aBeamSize,
+                final int aFrom, final int aTo) {
+            this.sentences = aSentences;
+            this.annotations = anAnnotations;
+            this.beamSize = aBeamSize;
+            this.from = aFrom;
+            this.to = aTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SENTENCES_PER_TASK) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.annotations[i] = annotateSentence(this.sentences.get(i),
+                            this.beamSize);
                 }
-                final String lemma = this.dictLemmatizer.lemmatize(word, morphemes.get(i).getTag());
-                sb.append(word).append("\t").append(lemma).append("\t")
-                        .append(morphemes.get(i).getTag()).append("\n");
+            } else {
+                final int middle = (this.from + this.to) >>> 1;
+                invokeAll(new SentenceTask(this.sentences, this.annotations,
+                        this.beamSize, this.from, middle), new SentenceTask(this.sentences,
+                        this.annotations, this.beamSize, middle, this.to));
             }
-            sb.append("\n");
         }
-        return sb.toString();
     }
 
 }
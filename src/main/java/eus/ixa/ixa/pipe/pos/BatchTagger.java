@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tags many NAF files with one loaded annotator per language. The files are
+ * tagged concurrently, each with the annotator of its language, and every
+ * annotated file is written to the output directory. Files that can not be
+ * tagged, including files in a language that is not configured, are reported
+ * and skipped without stopping the rest of the run.
+ *
+ * @author ragerri
+ * @version 2015-04-16
+ */
+public class BatchTagger {
+
+  /**
+   * Report progress every this number of files.
+   */
+  private static final int PROGRESS_INTERVAL = 1000;
+  /**
+   * Maximum number of files waiting for a worker per worker thread.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 16;
+
+  /**
+   * The annotators shared by every worker.
+   */
+  private final MultiLingualAnnotator annotator;
+  /**
+   * The version of ixa-pipe-pos, used in the NAF linguistic processor header.
+   */
+  private final String version;
+  /**
+   * If true output CoNLL tabulated format instead of NAF.
+   */
+  private final boolean noKaf;
+  /**
+   * Number of files processed so far.
+   */
+  private final AtomicInteger processed = new AtomicInteger();
+  /**
+   * Number of files that could not be tagged.
+   */
+  private final AtomicInteger failed = new AtomicInteger();
+
+  /**
+   * Construct a batch tagger loading the models and dictionaries specified in
+   * the properties object, either the annotation properties of one language
+   * or a {@link MultiLingualAnnotator} configuration.
+   *
+   * @param properties
+   *          the annotation properties
+   * @param aVersion
+   *          the version of ixa-pipe-pos
+   * @throws IOException
+   *           if the models can not be loaded
+   */
+  public BatchTagger(final Properties properties, final String aVersion)
+      throws IOException {
+    this.annotator = new MultiLingualAnnotator(properties);
+    this.noKaf = Boolean.valueOf(properties.getProperty("nokaf"));
+    this.version = aVersion;
+  }
+
+  /**
+   * Get the files to be tagged. If the input is a directory every file in it
+   * is tagged; otherwise the input is read as a list of files, one path per
+   * line.
+   *
+   * @param input
+   *          the input directory or file list
+   * @return the files to be tagged
+   * @throws IOException
+   *           if the file list can not be read
+   */
+  public static List<File> getInputFiles(final File input) throws IOException {
+    if (input.isDirectory()) {
+      return StringUtils.getFilesInDir(input);
+    }
+    final List<File> files = new ArrayList<File>();
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(input), "UTF-8"));
+    try {
+      String line;
+      while ((line = breader.readLine()) != null) {
+        if (line.trim().length() > 0) {
+          files.add(new File(line.trim()));
+        }
+      }
+    } finally {
+      breader.close();
+    }
+    return files;
+  }
+
+  /**
+   * Tag every input file and write the result to the output directory. Files
+   * read from an input directory keep their path relative to it; files read
+   * from a file list are written with their file name, adding a number to the
+   * names already used by a previous file of the list.
+   *
+   * @param input
+   *          the input directory or file list
+   * @param outputDir
+   *          the output directory
+   * @param threads
+   *          the number of files tagged concurrently
+   * @return the number of files that could not be tagged
+   * @throws IOException
+   *           if the input can not be read
+   * @throws InterruptedException
+   *           if interrupted while waiting for the workers
+   */
+  public final int tag(final File input, final File outputDir,
+      final int threads) throws IOException, InterruptedException {
+    final List<File> files = getInputFiles(input);
+    final int total = files.size();
+    final URI inputRoot = input.isDirectory() ? input.toURI() : null;
+    final Set<String> outputNames = new HashSet<String>();
+    final long lStartTime = System.currentTimeMillis();
+    final ExecutorService workers = new ThreadPoolExecutor(threads, threads,
+        0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads
+            * QUEUE_SIZE_PER_THREAD), new ThreadPoolExecutor.CallerRunsPolicy());
+    try {
+      for (final File inFile : files) {
+        // output names are chosen in list order, so numbering is deterministic
+        final File outFile;
+        try {
+          outFile = getOutputFile(inFile, inputRoot, outputDir, outputNames);
+        } catch (final IOException e) {
+          reportFailure(inFile, e, total);
+          continue;
+        }
+        workers.execute(new Runnable() {
+          @Override
+          public void run() {
+            tagFile(inFile, outFile, total);
+          }
+        });
+      }
+    } finally {
+      workers.shutdown();
+    }
+    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    final long difference = System.currentTimeMillis() - lStartTime;
+    System.err.println("ixa-pipe-pos tagged " + (total - this.failed.get())
+        + " of " + total + " files in " + difference + " miliseconds; "
+        + this.failed.get() + " failed ... [DONE]");
+    return this.failed.get();
+  }
+
+  /**
+   * Get the output file of an input file.
+   *
+   * @param inFile
+   *          the input file
+   * @param inputRoot
+   *          the URI of the input directory, null for file lists
+   * @param outputDir
+   *          the output directory
+   * @param outputNames
+   *          the output names used so far
+   * @return the output file
+   * @throws IOException
+   *           if the input file is not in the input directory
+   */
+  private File getOutputFile(final File inFile, final URI inputRoot,
+      final File outputDir, final Set<String> outputNames) throws IOException {
+    String name = inFile.getName();
+    if (inputRoot != null) {
+      // relative to the input path as given, symbolic links are not resolved
+      final URI relative = inputRoot.relativize(inFile.toURI());
+      if (relative.isAbsolute()) {
+        throw new IOException(inFile + " is not in the input directory");
+      }
+      name = relative.getPath();
+    } else if (!outputNames.add(name)) {
+      final int dot = name.lastIndexOf('.');
+      final String base = dot > 0 ? name.substring(0, dot) : name;
+      final String extension = dot > 0 ? name.substring(dot) : "";
+      int number = 2;
+      while (!outputNames.add(base + "-" + number + extension)) {
+        number++;
+      }
+      name = base + "-" + number + extension;
+      System.err.println("WARNING: " + inFile + " has the name of a previous "
+          + "file of the list, writing it as " + name);
+    }
+    if (this.noKaf) {
+      name = name + ".conll";
+    }
+    return new File(outputDir, name);
+  }
+
+  /**
+   * Tag one file, reporting any failure. A partially written output file is
+   * deleted.
+   *
+   * @param inFile
+   *          the input NAF file
+   * @param outFile
+   *          the output file
+   * @param total
+   *          the total number of files, for progress reports
+   */
+  private void tagFile(final File inFile, final File outFile, final int total) {
+    boolean writing = false;
+    try {
+      final BufferedReader breader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(inFile), "UTF-8"));
+      final KAFDocument kaf;
+      try {
+        kaf = KAFDocument.createFromStream(breader);
+      } finally {
+        breader.close();
+      }
+      final Annotate langAnnotator = this.annotator.getAnnotator(kaf.getLang());
+      String annotated = null;
+      if (!this.noKaf) {
+        final KAFDocument.LinguisticProcessor newLp = kaf
+            .addLinguisticProcessor("terms", "ixa-pipe-pos-"
+                + this.annotator.getModelName(kaf.getLang()), this.version);
+        newLp.setBeginTimestamp();
+        langAnnotator.annotatePOSToKAF(kaf);
+        newLp.setEndTimestamp();
+        annotated = kaf.toString();
+      }
+      outFile.getParentFile().mkdirs();
+      writing = true;
+      final BufferedWriter bwriter = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(outFile), "UTF-8"));
+      try {
+        if (this.noKaf) {
+          langAnnotator.annotatePOSToCoNLL(kaf, bwriter);
+        } else {
+          bwriter.write(annotated);
+        }
+      } finally {
+        bwriter.close();
+      }
+    } catch (final Exception e) {
+      if (writing && outFile.exists() && !outFile.delete()) {
+        System.err.println("WARNING: could not delete partial output "
+            + outFile);
+      }
+      reportFailure(inFile, e, total);
+      return;
+    }
+    reportProgress(total);
+  }
+
+  /**
+   * Count and report a file that could not be tagged.
+   *
+   * @param inFile
+   *          the input file
+   * @param e
+   *          the cause of the failure
+   * @param total
+   *          the total number of files, for progress reports
+   */
+  private void reportFailure(final File inFile, final Exception e,
+      final int total) {
+    this.failed.incrementAndGet();
+    System.err.println("ERROR: could not tag " + inFile + ": "
+        + e.getMessage());
+    reportProgress(total);
+  }
+
+  /**
+   * Count a processed file and report the progress every
+   * {@value #PROGRESS_INTERVAL} files.
+   *
+   * @param total
+   *          the total number of files
+   */
+  private void reportProgress(final int total) {
+    final int done = this.processed.incrementAndGet();
+    if (done % PROGRESS_INTERVAL == 0) {
+      System.err.println("Processed " + done + " of " + total + " files ("
+          + this.failed.get() + " failed)");
+    }
+  }
+
+}
@@ -21,11 +21,15 @@ import ixa.kaflib.KAFDocument;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Date;
 import java.util.Properties;
 
 import net.sourceforge.argparse4j.ArgumentParsers;
@@ -43,6 +47,7 @@ import org.jdom2.JDOMException;
 
 import com.google.common.io.Files;
 
+import eus.ixa.ixa.pipe.lemma.MappedLemmatizer;
 import eus.ixa.ixa.pipe.pos.eval.CrossValidator;
 import eus.ixa.ixa.pipe.pos.eval.Evaluate;
 import eus.ixa.ixa.pipe.pos.train.FixedTrainer;
@@ -92,6 +97,10 @@ public class CLI {
    * The parser that manages the tagging sub-command.
    */
   private final Subparser annotateParser;
+  /**
+   * The parser that manages the batch tagging sub-command.
+   */
+  private final Subparser batchParser;
   /**
    * The parser that manages the training sub-command.
    */
@@ -104,10 +113,30 @@ public class CLI {
    * The parser that manages the cross validation sub-command.
    */
   private final Subparser crossValidateParser;
+  /**
+   * The parser that manages the compile sub-command.
+   */
+  private final Subparser compileParser;
+  /**
+   * The parser that manages the tagging server sub-command.
+   */
+  private final Subparser serverParser;
+  /**
+   * The parser that manages the tagging client sub-command.
+   */
+  private final Subparser clientParser;
   /**
    * Default beam size for decoding.
    */
   public static final String DEFAULT_BEAM_SIZE = "3";
+  /**
+   * Default number of worker threads of the tagging server.
+   */
+  public static final String DEFAULT_SERVER_THREADS = "4";
+  /**
+   * Default number of threads tagging the sentences of a document.
+   */
+  public static final String DEFAULT_PARALLEL_THREADS = "1";
 
   /**
    * Construct a CLI object with the three sub-parsers to manage the command
@@ -116,6 +145,9 @@ public class CLI {
   public CLI() {
     this.annotateParser = this.subParsers.addParser("tag").help("Tagging CLI");
     loadAnnotateParameters();
+    this.batchParser = this.subParsers.addParser("batch").help(
+        "Batch tagging CLI");
+    loadBatchParameters();
     this.trainParser = this.subParsers.addParser("train").help("Training CLI");
     loadTrainingParameters();
     this.evalParser = this.subParsers.addParser("eval").help("Evaluation CLI");
@@ -123,6 +155,15 @@ public class CLI {
     this.crossValidateParser = this.subParsers.addParser("cross").help(
         "Cross validation CLI");
     loadCrossValidateParameters();
+    this.compileParser = this.subParsers.addParser("compile").help(
+        "Compile resources into binary formats");
+    loadCompileParameters();
+    this.serverParser = this.subParsers.addParser("server").help(
+        "Start TCP socket server");
+    loadServerParameters();
+    this.clientParser = this.subParsers.addParser("client").help(
+        "Send queries to the TCP socket server");
+    loadClientParameters();
   }
 
   public static void main(final String[] args) throws JDOMException,
@@ -149,17 +190,25 @@ public class CLI {
       System.err.println("CLI options: " + this.parsedArguments);
       if (args[0].equals("tag")) {
         annotate(System.in, System.out);
+      } else if (args[0].equals("batch")) {
+        batch();
       } else if (args[0].equals("eval")) {
         eval();
       } else if (args[0].equals("train")) {
         train();
       } else if (args[0].equals("cross")) {
         crossValidate();
+      } else if (args[0].equals("compile")) {
+        compile();
+      } else if (args[0].equals("server")) {
+        server();
+      } else if (args[0].equals("client")) {
+        client(System.in, System.out);
       }
     } catch (final ArgumentParserException e) {
       this.argParser.handleError(e);
       System.out.println("Run java -jar target/ixa-pipe-pos-" + this.version
-          + ".jar (tag|train|eval|cross) -help for details");
+          + ".jar (tag|batch|train|eval|cross|compile|server|client) -help for details");
       System.exit(1);
     }
   }
@@ -191,11 +240,30 @@ public class CLI {
     breader = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
     bwriter = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
 
+    if (this.parsedArguments.getString("inputFormat").equals("tok")) {
+      final String lang = this.parsedArguments.getString("lang");
+      if (lang == null) {
+        System.err.println("Tokenized input requires the language parameter!!");
+        System.exit(1);
+      }
+      final Properties properties = setAnnotateProperties(model, lang,
+          beamSize, multiwords, dictag);
+      addOptionalProperties(properties);
+      final Annotate annotator = new Annotate(properties);
+      if (this.parsedArguments.getBoolean("jsonl")) {
+        annotator.annotateTokensToJSON(breader, bwriter);
+      } else {
+        annotator.annotateTokensToCoNLL(breader, bwriter);
+      }
+      bwriter.close();
+      breader.close();
+      return;
+    }
     final KAFDocument kaf = KAFDocument.createFromStream(breader);
     // language
     String lang;
-    if (this.parsedArguments.getString("language") != null) {
-      lang = this.parsedArguments.getString("language");
+    if (this.parsedArguments.getString("lang") != null) {
+      lang = this.parsedArguments.getString("lang");
       if (!kaf.getLang().equalsIgnoreCase(lang)) {
         System.err.println("Language parameter in NAF and CLI do not match!!");
         System.exit(1);
@@ -205,9 +273,12 @@ public class CLI {
     }
     final Properties properties = setAnnotateProperties(model, lang, beamSize,
         multiwords, dictag);
+    properties.setProperty("parallel",
+        this.parsedArguments.getString("parallel"));
+    addOptionalProperties(properties);
     final Annotate annotator = new Annotate(properties);
     if (this.parsedArguments.getBoolean("nokaf")) {
-      bwriter.write(annotator.annotatePOSToCoNLL(kaf));
+      annotator.annotatePOSToCoNLL(kaf, bwriter);
     } else {
       final KAFDocument.LinguisticProcessor newLp = kaf.addLinguisticProcessor(
           "terms", "ixa-pipe-pos-" + Files.getNameWithoutExtension(model),
@@ -234,6 +305,19 @@ public class CLI {
     this.annotateParser.addArgument("--beamSize").required(false)
         .setDefault(DEFAULT_BEAM_SIZE)
         .help("Choose beam size for decoding, it defaults to 3.");
+    this.annotateParser.addArgument("--inputFormat").choices("naf", "tok")
+        .required(false).setDefault("naf")
+        .help("Read NAF or tokenized text, one sentence per line with "
+            + "whitespace separated tokens; tokenized text requires the "
+            + "language and is annotated in conll tabulated format.");
+    this.annotateParser.addArgument("--jsonl")
+        .action(Arguments.storeTrue())
+        .help("Annotate tokenized text as JSON lines instead of conll "
+            + "tabulated format.\n");
+    this.annotateParser.addArgument("--parallel").required(false)
+        .setDefault(DEFAULT_PARALLEL_THREADS)
+        .help("Number of threads tagging the sentences of a NAF document in "
+            + "parallel, it defaults to 1.");
     this.annotateParser
         .addArgument("--nokaf")
         .action(Arguments.storeTrue())
@@ -245,6 +329,120 @@ public class CLI {
     this.annotateParser.addArgument("-d", "--dictag")
         .action(Arguments.storeTrue())
         .help("Post process POS tagger output with a monosemic dictionary.\n");
+    this.annotateParser.addArgument("--lemmatizerDict").required(false)
+        .help("Lemmatize with a binary dictionary created with the compile "
+            + "subcommand instead of the default Morfologik dictionary.\n");
+    this.annotateParser.addArgument("--lemmaCacheSize").required(false)
+        .help("Maximum number of (word, postag) pairs whose lemma is cached, "
+            + "0 to disable the cache; it defaults to "
+            + Annotate.DEFAULT_LEMMA_CACHE_SIZE + ".\n");
+    this.annotateParser.addArgument("--tagsetMapping").required(false)
+        .help("Map the postags to the NAF pos tagset with this mapping file "
+            + "instead of the one distributed for the language.\n");
+  }
+
+  /**
+   * Tag every NAF file of a directory or file list with one loaded annotator.
+   * 
+   * @throws IOException
+   *           if the models or the input can not be read
+   */
+  public final void batch() throws IOException {
+
+    final String config = this.parsedArguments.getString("config");
+    final int threads = Integer.parseInt(this.parsedArguments
+        .getString("threads"));
+    final Properties properties;
+    if (config != null) {
+      properties = new Properties();
+      final InputStream configInputStream = new FileInputStream(config);
+      try {
+        properties.load(configInputStream);
+      } finally {
+        configInputStream.close();
+      }
+    } else {
+      final String model = this.parsedArguments.getString("model");
+      final String lang = this.parsedArguments.getString("language");
+      if (model == null || lang == null) {
+        System.err.println("Batch tagging requires either a configuration file "
+            + "or the model and language parameters!!");
+        System.exit(1);
+      }
+      final String beamSize = this.parsedArguments.getString("beamSize");
+      final String multiwords = Boolean.toString(this.parsedArguments
+          .getBoolean("multiwords"));
+      final String dictag = Boolean.toString(this.parsedArguments
+          .getBoolean("dictag"));
+      properties = setAnnotateProperties(model, lang, beamSize, multiwords,
+          dictag);
+      addOptionalProperties(properties);
+    }
+    properties.setProperty("nokaf",
+        Boolean.toString(this.parsedArguments.getBoolean("nokaf")));
+    final BatchTagger batchTagger = new BatchTagger(properties, this.version
+        + "-" + this.commit);
+    int failed = 0;
+    try {
+      failed = batchTagger.tag(
+          new File(this.parsedArguments.getString("input")), new File(
+              this.parsedArguments.getString("output")), threads);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("ERROR: batch tagging interrupted!");
+      System.exit(1);
+    }
+    if (failed > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Generate the batch tagging parameters of the CLI.
+   */
+  private void loadBatchParameters() {
+    this.batchParser.addArgument("-m", "--model").required(false)
+        .help("The model to perform POS tagging, required unless a "
+            + "configuration file is given.");
+    this.batchParser.addArgument("-l", "--language")
+        .choices("en", "es", "gl", "it").required(false)
+        .help("Choose the language of the documents, required unless a "
+            + "configuration file is given.");
+    this.batchParser.addArgument("-c", "--config").required(false)
+        .help("Properties file configuring the languages and the model and "
+            + "resources of each, e.g., languages=en,es and en.model=... ; "
+            + "every document is tagged with the annotator of its language.");
+    this.batchParser.addArgument("-i", "--input").required(true)
+        .help("Input directory or file listing one NAF file per line.");
+    this.batchParser.addArgument("-o", "--output").required(true)
+        .help("Output directory.");
+    this.batchParser.addArgument("--beamSize").required(false)
+        .setDefault(DEFAULT_BEAM_SIZE)
+        .help("Choose beam size for decoding, it defaults to 3.");
+    this.batchParser.addArgument("-t", "--threads").required(false)
+        .setDefault(DEFAULT_SERVER_THREADS)
+        .help("Number of files tagged concurrently, it defaults to 4.");
+    this.batchParser
+        .addArgument("--nokaf")
+        .action(Arguments.storeTrue())
+        .help(
+            "Do not print tokens in NAF format, but conll tabulated format.\n");
+    this.batchParser.addArgument("-mw", "--multiwords")
+        .action(Arguments.storeTrue())
+        .help("Use to detect and process multiwords.\n");
+    this.batchParser.addArgument("-d", "--dictag")
+        .action(Arguments.storeTrue())
+        .help("Post process POS tagger output with a monosemic dictionary.\n");
+    this.batchParser.addArgument("--lemmatizerDict").required(false)
+        .help("Lemmatize with a binary dictionary created with the compile "
+            + "subcommand instead of the default Morfologik dictionary.\n");
+    this.batchParser.addArgument("--lemmaCacheSize").required(false)
+        .help("Maximum number of (word, postag) pairs whose lemma is cached, "
+            + "0 to disable the cache; it defaults to "
+            + Annotate.DEFAULT_LEMMA_CACHE_SIZE + ".\n");
+    this.batchParser.addArgument("--tagsetMapping").required(false)
+        .help("Map the postags to the NAF pos tagset with this mapping file "
+            + "instead of the one distributed for the language.\n");
   }
 
   /**
@@ -289,8 +487,11 @@ public class CLI {
     final String testFile = this.parsedArguments.getString("testSet");
     final String model = this.parsedArguments.getString("model");
     final String beamSize = this.parsedArguments.getString("beamSize");
+    final int threads = Integer.parseInt(this.parsedArguments
+        .getString("threads"));
 
-    final Evaluate evaluator = new Evaluate(testFile, model, beamSize);
+    final Evaluate evaluator = new Evaluate(testFile, model, beamSize,
+        threads);
     if (this.parsedArguments.getString("evalReport") != null) {
       if (this.parsedArguments.getString("evalReport").equalsIgnoreCase(
           "detailed")) {
@@ -321,6 +522,9 @@ public class CLI {
     this.evalParser.addArgument("--beamSize").setDefault(DEFAULT_BEAM_SIZE)
         .type(Integer.class)
         .help("Choose beam size for evaluation: 1 is faster.");
+    this.evalParser.addArgument("--threads").required(false)
+        .setDefault(DEFAULT_PARALLEL_THREADS)
+        .help("Number of threads tagging the test set, it defaults to 1.");
   }
 
   /**
@@ -335,7 +539,13 @@ public class CLI {
     final TrainingParameters params = InputOutputUtils
         .loadTrainingParameters(paramFile);
     final CrossValidator crossValidator = new CrossValidator(params);
-    crossValidator.crossValidate(params);
+    try {
+      crossValidator.crossValidate(params);
+    } catch (final IOException e) {
+      System.err.println("ERROR: cross validation failed: " + e.getMessage());
+      e.printStackTrace();
+      System.exit(1);
+    }
   }
 
   /**
@@ -346,6 +556,220 @@ public class CLI {
         .help("Load the Cross validation parameters file\n");
   }
 
+  /**
+   * Compile a resource into its binary format.
+   * 
+   * @throws IOException
+   *           if the resource can not be read or written
+   */
+  public final void compile() throws IOException {
+    final String dictionary = this.parsedArguments.getString("dictionary");
+    final String model = this.parsedArguments.getString("model");
+    final File output = new File(this.parsedArguments.getString("output"));
+    if ((dictionary == null) == (model == null)) {
+      System.err.println("Compile either a lemmatizer dictionary or a model!");
+      System.exit(1);
+    }
+    if (model != null) {
+      final long lStartTime = new Date().getTime();
+      MappedPOSModel.compile(MappedPOSModel.read(new File(model)), output);
+      final long lEndTime = new Date().getTime();
+      System.err.println("Model compiled to " + output + " in "
+          + (lEndTime - lStartTime) + " miliseconds");
+      return;
+    }
+    final InputStream dictInputStream = new FileInputStream(dictionary);
+    try {
+      MappedLemmatizer.compile(dictInputStream, output);
+    } finally {
+      dictInputStream.close();
+    }
+    System.err.println("Lemmatizer dictionary compiled to " + output);
+  }
+
+  /**
+   * Load the parameters of the compile CLI.
+   */
+  private void loadCompileParameters() {
+    this.compileParser.addArgument("-d", "--dictionary")
+        .help("Lemmatizer dictionary with tab separated word, lemma and postag "
+            + "per line to compile into a memory mapped binary dictionary.\n");
+    this.compileParser.addArgument("-m", "--model")
+        .help("Model to compile into a memory mapped binary model.\n");
+    this.compileParser.addArgument("-o", "--output").required(true)
+        .help("Output file.\n");
+  }
+
+  /**
+   * Start a TCP socket server with the models and dictionaries loaded once.
+   * 
+   * @throws IOException
+   *           if the models can not be loaded or the port can not be opened
+   */
+  public final void server() throws IOException {
+
+    final String model = this.parsedArguments.getString("model");
+    final String lang = this.parsedArguments.getString("language");
+    final String beamSize = this.parsedArguments.getString("beamSize");
+    final String multiwords = Boolean.toString(this.parsedArguments
+        .getBoolean("multiwords"));
+    final String dictag = Boolean.toString(this.parsedArguments
+        .getBoolean("dictag"));
+    final int port = Integer.parseInt(this.parsedArguments.getString("port"));
+    final int threads = Integer.parseInt(this.parsedArguments
+        .getString("threads"));
+    final Properties properties = setAnnotateProperties(model, lang, beamSize,
+        multiwords, dictag);
+    properties.setProperty("nokaf",
+        Boolean.toString(this.parsedArguments.getBoolean("nokaf")));
+    properties.setProperty("maxBeamSize",
+        this.parsedArguments.getString("maxBeamSize"));
+    addOptionalProperties(properties);
+    final TaggerServer server = new TaggerServer(properties, port, threads,
+        this.version + "-" + this.commit);
+    server.serve();
+  }
+
+  /**
+   * Send a document read from the input stream to the TCP socket server and
+   * write the annotated document to the output stream. Exits with status 1 if
+   * the server replies with an error or with nothing.
+   * 
+   * @param inputStream
+   *          the input stream
+   * @param outputStream
+   *          the output stream
+   * @throws IOException
+   *           if the server is not available
+   */
+  public final void client(final InputStream inputStream,
+      final OutputStream outputStream) throws IOException {
+
+    final String host = this.parsedArguments.getString("host");
+    final int port = Integer.parseInt(this.parsedArguments.getString("port"));
+    final Socket socket = new Socket(InetAddress.getByName(host), port);
+    try {
+      final BufferedReader inReader = new BufferedReader(new InputStreamReader(
+          inputStream, "UTF-8"));
+      final BufferedWriter socketWriter = new BufferedWriter(
+          new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+      final String beamSize = this.parsedArguments.getString("beamSize");
+      if (beamSize != null) {
+        socketWriter.write(TaggerServer.BEAM_SIZE + beamSize);
+        socketWriter.newLine();
+      }
+      String line;
+      while ((line = inReader.readLine()) != null) {
+        socketWriter.write(line);
+        socketWriter.newLine();
+      }
+      socketWriter.write(TaggerServer.END_OF_DOCUMENT);
+      socketWriter.newLine();
+      socketWriter.flush();
+      socket.shutdownOutput();
+      final BufferedReader socketReader = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      final BufferedWriter outWriter = new BufferedWriter(
+          new OutputStreamWriter(outputStream, "UTF-8"));
+      line = socketReader.readLine();
+      if (line == null) {
+        System.err.println("ERROR: empty reply from the server");
+        System.exit(1);
+      } else if (line.startsWith(TaggerServer.ERROR)) {
+        System.err.println("ERROR: "
+            + line.substring(TaggerServer.ERROR.length()).trim());
+        System.exit(1);
+      }
+      while (line != null) {
+        outWriter.write(line);
+        outWriter.newLine();
+        line = socketReader.readLine();
+      }
+      outWriter.flush();
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Create the available parameters for the tagging server.
+   */
+  private void loadServerParameters() {
+    this.serverParser.addArgument("-p", "--port").required(true)
+        .help("Port to be assigned to the server.\n");
+    this.serverParser.addArgument("-m", "--model").required(true)
+        .help("It is required to provide a model to perform POS tagging.");
+    this.serverParser.addArgument("-l", "--language")
+        .choices("en", "es", "gl", "it").required(true)
+        .help("Choose the language of the documents sent to the server.");
+    this.serverParser.addArgument("--beamSize").required(false)
+        .setDefault(DEFAULT_BEAM_SIZE)
+        .help("Choose beam size for decoding, it defaults to 3.");
+    this.serverParser.addArgument("--maxBeamSize").required(false)
+        .setDefault(TaggerServer.DEFAULT_MAX_BEAM_SIZE)
+        .help("Largest beam size clients can ask for, it defaults to "
+            + TaggerServer.DEFAULT_MAX_BEAM_SIZE + ".\n");
+    this.serverParser.addArgument("-t", "--threads").required(false)
+        .setDefault(DEFAULT_SERVER_THREADS)
+        .help("Number of documents tagged concurrently, it defaults to 4.");
+    this.serverParser
+        .addArgument("--nokaf")
+        .action(Arguments.storeTrue())
+        .help(
+            "Do not print tokens in NAF format, but conll tabulated format.\n");
+    this.serverParser.addArgument("-mw", "--multiwords")
+        .action(Arguments.storeTrue())
+        .help("Use to detect and process multiwords.\n");
+    this.serverParser.addArgument("-d", "--dictag")
+        .action(Arguments.storeTrue())
+        .help("Post process POS tagger output with a monosemic dictionary.\n");
+    this.serverParser.addArgument("--lemmatizerDict").required(false)
+        .help("Lemmatize with a binary dictionary created with the compile "
+            + "subcommand instead of the default Morfologik dictionary.\n");
+    this.serverParser.addArgument("--lemmaCacheSize").required(false)
+        .help("Maximum number of (word, postag) pairs whose lemma is cached, "
+            + "0 to disable the cache; it defaults to "
+            + Annotate.DEFAULT_LEMMA_CACHE_SIZE + ".\n");
+    this.serverParser.addArgument("--tagsetMapping").required(false)
+        .help("Map the postags to the NAF pos tagset with this mapping file "
+            + "instead of the one distributed for the language.\n");
+  }
+
+  /**
+   * Create the available parameters for the tagging client.
+   */
+  private void loadClientParameters() {
+    this.clientParser.addArgument("-p", "--port").required(true)
+        .help("Port of the server.\n");
+    this.clientParser.addArgument("--host").required(false)
+        .setDefault("localhost").help("Host of the server.\n");
+    this.clientParser.addArgument("--beamSize").required(false)
+        .help("Beam size for decoding this document, 1 for greedy decoding; "
+            + "it defaults to the beam size of the server.\n");
+  }
+
+  /**
+   * Add to the annotation properties the optional parameters shared by the
+   * tagging sub-commands.
+   * 
+   * @param properties
+   *          the annotation properties
+   */
+  private void addOptionalProperties(final Properties properties) {
+    if (this.parsedArguments.getString("lemmatizerDict") != null) {
+      properties.setProperty("lemmatizerDict",
+          this.parsedArguments.getString("lemmatizerDict"));
+    }
+    if (this.parsedArguments.getString("lemmaCacheSize") != null) {
+      properties.setProperty("lemmaCacheSize",
+          this.parsedArguments.getString("lemmaCacheSize"));
+    }
+    if (this.parsedArguments.getString("tagsetMapping") != null) {
+      properties.setProperty("tagsetMapping",
+          this.parsedArguments.getString("tagsetMapping"));
+    }
+  }
+
   /**
    * Set a Properties object with the CLI parameters for annotation.
    * 
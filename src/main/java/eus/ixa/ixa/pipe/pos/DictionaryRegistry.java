@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the dictionaries loaded in the JVM: lemmatizer, postag and
+ * multiword dictionaries. A dictionary is identified by its type, language
+ * and location and is loaded once, the first time it is requested, however
+ * many annotators use it. The dictionaries must therefore be thread safe.
+ *
+ * @author ragerri
+ * @version 2015-04-25
+ */
+public final class DictionaryRegistry {
+
+  /**
+   * The types of dictionaries.
+   */
+  public enum Type {
+    /**
+     * Lemmatizer dictionaries.
+     */
+    LEMMATIZER,
+    /**
+     * Monosemic postag dictionaries.
+     */
+    MORPHO_TAGGER,
+    /**
+     * Multiword dictionaries.
+     */
+    MULTIWORD
+  }
+
+  /**
+   * Loads a dictionary the first time it is requested.
+   *
+   * @param <T>
+   *          the dictionary class
+   */
+  public interface Loader<T> {
+
+    /**
+     * Load the dictionary.
+     *
+     * @return the dictionary
+     * @throws IOException
+     *           if the dictionary can not be read
+     */
+    T load() throws IOException;
+  }
+
+  /**
+   * The registry of the JVM.
+   */
+  private static final DictionaryRegistry INSTANCE = new DictionaryRegistry();
+
+  /**
+   * The dictionaries by type, language and location.
+   */
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  private DictionaryRegistry() {
+  }
+
+  /**
+   * Get the registry of the JVM.
+   *
+   * @return the registry
+   */
+  public static DictionaryRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Get a dictionary, loading it if it was not requested before.
+   *
+   * @param <T>
+   *          the dictionary class
+   * @param type
+   *          the type of dictionary
+   * @param lang
+   *          the language
+   * @param resource
+   *          the location of the dictionary
+   * @param loader
+   *          the loader of the dictionary
+   * @return the dictionary
+   * @throws IOException
+   *           if the dictionary can not be read
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(final Type type, final String lang, final URL resource,
+      final Loader<T> loader) throws IOException {
+    final String key = type + "\t" + lang.toLowerCase() + "\t" + resource;
+    Entry entry = this.entries.get(key);
+    if (entry == null) {
+      entry = new Entry(type, resource);
+      final Entry previous = this.entries.putIfAbsent(key, entry);
+      if (previous != null) {
+        entry = previous;
+      }
+    }
+    return (T) entry.get(loader);
+  }
+
+  /**
+   * Get the size of the resources the dictionaries loaded so far were read
+   * from. This is not their heap footprint, which is usually several times
+   * larger: it is meant to compare dictionaries and to check which ones are
+   * loaded. Resources whose size is unknown count as 0.
+   *
+   * @return the size in bytes
+   */
+  public long getResourceSize() {
+    long size = 0;
+    for (final Entry entry : this.entries.values()) {
+      size += Math.max(0, entry.getSize());
+    }
+    return size;
+  }
+
+  /**
+   * Get the size of the resources the dictionaries of a type loaded so far
+   * were read from; see {@link #getResourceSize()}.
+   *
+   * @param type
+   *          the type of dictionary
+   * @return the size in bytes
+   */
+  public long getResourceSize(final Type type) {
+    long size = 0;
+    for (final Entry entry : this.entries.values()) {
+      if (entry.type == type) {
+        size += Math.max(0, entry.getSize());
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Get the number of dictionaries loaded so far.
+   *
+   * @return the number of dictionaries
+   */
+  public int size() {
+    int size = 0;
+    for (final Entry entry : this.entries.values()) {
+      if (entry.getSize() >= 0) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * A dictionary and the size of its resource, loaded on first use.
+   */
+  private static final class Entry {
+
+    private final Type type;
+    private final URL resource;
+    private Object dictionary;
+    private volatile long size = -1;
+
+    private Entry(final Type aType, final URL aResource) {
+      this.type = aType;
+      this.resource = aResource;
+    }
+
+    private synchronized Object get(final Loader<?> loader) throws IOException {
+      if (this.dictionary == null) {
+        this.dictionary = loader.load();
+        final URLConnection connection = this.resource.openConnection();
+        this.size = Math.max(0, connection.getContentLength());
+        connection.getInputStream().close();
+      }
+      return this.dictionary;
+    }
+
+    /**
+     * Get the size of the resource.
+     *
+     * @return the size in bytes, 0 if unknown, -1 if not loaded yet
+     */
+    private long getSize() {
+      return this.size;
+    }
+  }
+
+}
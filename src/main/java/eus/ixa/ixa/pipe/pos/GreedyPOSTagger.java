@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.postag.POSContextGenerator;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.util.SequenceValidator;
+import eus.ixa.ixa.pipe.pos.train.BaselineContextGenerator;
+
+/**
+ * Greedy (beam size 1) decoder for a {@link POSModel}. Every token gets the
+ * most probable postag allowed by the sequence validator given the postags
+ * already assigned, which is what the beam search does with a beam of one,
+ * but without building and sorting {@code Sequence} objects for each token.
+ *
+ * Instances keep the postags and probabilities of the last sentence, so they
+ * must not be shared across threads.
+ *
+ * @author ragerri
+ * @version 2015-04-22
+ */
+public class GreedyPOSTagger {
+
+  /**
+   * The maximum entropy model.
+   */
+  private final MaxentModel model;
+  /**
+   * The context generator of the model.
+   */
+  private final POSContextGenerator contextGenerator;
+  /**
+   * The sequence validator of the model.
+   */
+  private final SequenceValidator<String> sequenceValidator;
+  /**
+   * The probabilities of the postags of the last sentence.
+   */
+  private double[] probs = new double[0];
+
+  /**
+   * Construct a greedy decoder over a model.
+   *
+   * @param posModel
+   *          the model
+   * @throws IllegalArgumentException
+   *           if the model is not a maximum entropy model
+   */
+  public GreedyPOSTagger(final POSModel posModel) {
+    this.model = posModel.getPosModel();
+    if (this.model == null) {
+      throw new IllegalArgumentException(
+          "Greedy decoding requires a maximum entropy model!");
+    }
+    final POSTaggerFactory factory = posModel.getFactory();
+    this.contextGenerator = factory.getPOSContextGenerator(0);
+    this.sequenceValidator = factory.getSequenceValidator();
+  }
+
+  /**
+   * Check whether a model can be decoded greedily.
+   *
+   * @param posModel
+   *          the model
+   * @return true if the model is a maximum entropy model
+   */
+  public static boolean isSupported(final POSModel posModel) {
+    return posModel.getPosModel() != null;
+  }
+
+  /**
+   * Tag a tokenized sentence. The prior decisions passed to the context
+   * generator and the sequence validator are the postags assigned so far; the
+   * array entries from the current token onwards are not yet set.
+   *
+   * @param tokens
+   *          the sentence
+   * @return the postags
+   */
+  public final String[] tag(final String[] tokens) {
+    final String[] tags = new String[tokens.length];
+    if (this.probs.length < tokens.length) {
+      this.probs = new double[tokens.length];
+    }
+    tag(tokens, tags, this.probs);
+    return tags;
+  }
+
+  /**
+   * Tag a tokenized sentence into caller provided arrays, which may be longer
+   * than the sentence. The entries of {@code tags} from the first token
+   * onwards must be null, as the context generator sees them as the prior
+   * decisions.
+   *
+   * @param tokens
+   *          the sentence
+   * @param tags
+   *          the array to store the postags
+   * @param tagProbs
+   *          the array to store the probabilities of the postags
+   */
+  public final void tag(final String[] tokens, final String[] tags,
+      final double[] tagProbs) {
+    if (this.contextGenerator instanceof BaselineContextGenerator) {
+      ((BaselineContextGenerator) this.contextGenerator).startSentence();
+    }
+    for (int i = 0; i < tokens.length; i++) {
+      final String[] context = this.contextGenerator.getContext(i, tokens,
+          tags, null);
+      final double[] scores = this.model.eval(context);
+      int best = argmax(scores);
+      String outcome = this.model.getOutcome(best);
+      if (this.sequenceValidator != null
+          && !this.sequenceValidator.validSequence(i, tokens, tags, outcome)) {
+        final int bestValid = bestValidOutcome(i, tokens, tags, scores);
+        if (bestValid >= 0) {
+          best = bestValid;
+          outcome = this.model.getOutcome(best);
+        }
+      }
+      tags[i] = outcome;
+      tagProbs[i] = scores[best];
+    }
+  }
+
+  /**
+   * Get the probabilities of the postags of the last tagged sentence.
+   *
+   * @return the probabilities, one per token of the last sentence
+   */
+  public final double[] probs() {
+    return this.probs;
+  }
+
+  /**
+   * Get the index of the highest score.
+   *
+   * @param scores
+   *          the scores
+   * @return the index of the highest score
+   */
+  private static int argmax(final double[] scores) {
+    int best = 0;
+    for (int i = 1; i < scores.length; i++) {
+      if (scores[i] > scores[best]) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Get the highest scoring outcome allowed by the sequence validator.
+   *
+   * @param index
+   *          the index of the token
+   * @param tokens
+   *          the sentence
+   * @param tags
+   *          the postags assigned so far
+   * @param scores
+   *          the scores of every outcome
+   * @return the index of the outcome or -1 if no outcome is valid
+   */
+  private int bestValidOutcome(final int index, final String[] tokens,
+      final String[] tags, final double[] scores) {
+    int best = -1;
+    for (int i = 0; i < scores.length; i++) {
+      if ((best < 0 || scores[i] > scores[best])
+          && this.sequenceValidator.validSequence(index, tokens, tags,
+              this.model.getOutcome(i))) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.IndexHashTable;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.postag.POSModel;
+
+/**
+ * Compiled {@link POSModel} format whose parameters are memory mapped from
+ * disk instead of being read into objects, so loading a model takes
+ * milliseconds and several processes using the same file share one copy of
+ * the parameters in memory.
+ *
+ * The binary format, created with {@link #compile(POSModel, File)}, is: a
+ * header with the magic number and the format version; the length and bytes
+ * of a POS model holding the factory and its dictionaries but no parameters;
+ * the model type, correction constant and correction parameter; the number of
+ * outcomes, predicates, parameters, hash slots and characters; the outcomes,
+ * each as a short length followed by its characters; the predicates, each as
+ * the offset and length of its characters and the first index and number of
+ * its parameters (16 bytes); the predicate index, an open addressing hash
+ * table of predicate numbers; the outcome of every parameter; the parameters
+ * as floats; and the characters of the predicates.
+ *
+ * As the parameters are stored as floats, the scores of a compiled model are
+ * within float rounding of those of the model it was compiled from rather
+ * than identical, so the best postag can differ where two postags are almost
+ * tied.
+ *
+ * @author ragerri
+ * @version 2015-04-25
+ */
+public final class MappedPOSModel {
+
+  /**
+   * Magic number of the compiled models.
+   */
+  public static final int MAGIC = 0x4958504D;
+  /**
+   * Version of the binary format.
+   */
+  private static final int VERSION = 1;
+  /**
+   * Size in bytes of a predicate.
+   */
+  private static final int PREDICATE_SIZE = 16;
+  /**
+   * Empty slot of the predicate index.
+   */
+  private static final int EMPTY = -1;
+
+  private MappedPOSModel() {
+  }
+
+  /**
+   * Check whether a file is a compiled model.
+   *
+   * @param model
+   *          the file
+   * @return true if the file starts with the magic number
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public static boolean isMappedModel(final File model) throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(model, "r");
+    try {
+      return file.length() >= 4 && file.readInt() == MAGIC;
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Read a model, either a compiled model, which is memory mapped, or an
+   * OpenNLP model.
+   *
+   * @param model
+   *          the model file
+   * @return the model
+   * @throws IOException
+   *           if the model can not be read
+   */
+  public static POSModel read(final File model) throws IOException {
+    if (isMappedModel(model)) {
+      return load(model);
+    }
+    final InputStream modelInputStream = new FileInputStream(model);
+    try {
+      return new POSModel(modelInputStream);
+    } finally {
+      modelInputStream.close();
+    }
+  }
+
+  /**
+   * Map a compiled model.
+   *
+   * @param model
+   *          the compiled model file
+   * @return the model
+   * @throws IOException
+   *           if the file can not be mapped or is not a compiled model
+   */
+  public static POSModel load(final File model) throws IOException {
+    final MappedByteBuffer buffer;
+    final RandomAccessFile file = new RandomAccessFile(model, "r");
+    try {
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+          file.length());
+    } finally {
+      file.close();
+    }
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException(model + " is not a compiled POS model!");
+    }
+    final byte[] shell = new byte[buffer.getInt(8)];
+    final ByteBuffer shellBuffer = buffer.duplicate();
+    shellBuffer.position(12);
+    shellBuffer.get(shell);
+    final POSModel shellModel = new POSModel(new ByteArrayInputStream(shell));
+    final MappedMaxentModel maxentModel = new MappedMaxentModel(buffer,
+        12 + shell.length);
+    return new POSModel(shellModel.getLanguage(), maxentModel, null,
+        shellModel.getFactory());
+  }
+
+  /**
+   * Compile a model into the binary format.
+   *
+   * @param posModel
+   *          the model
+   * @param output
+   *          the compiled model file
+   * @throws IOException
+   *           if the model is not a maximum entropy or perceptron model or
+   *           the file can not be written
+   */
+  public static void compile(final POSModel posModel, final File output)
+      throws IOException {
+    final MaxentModel maxentModel = posModel.getPosModel();
+    if (!(maxentModel instanceof AbstractModel)) {
+      throw new IOException(
+          "Only maximum entropy and perceptron models can be compiled!");
+    }
+    final AbstractModel model = (AbstractModel) maxentModel;
+    final Object[] data = model.getDataStructures();
+    final Context[] params = (Context[]) data[0];
+    final String[] predicates = getPredicates(data[1], params.length);
+    final String[] outcomes = (String[]) data[2];
+    final double correctionConstant = ((Number) data[3]).doubleValue();
+    final double correctionParam = ((Number) data[4]).doubleValue();
+
+    // the factory and its dictionaries are kept in a model without parameters
+    final ByteArrayOutputStream shell = new ByteArrayOutputStream();
+    new POSModel(posModel.getLanguage(), new GISModel(new Context[0],
+        new String[0], outcomes, 1, 0.0), null, posModel.getFactory())
+        .serialize(shell);
+
+    int numParams = 0;
+    int numChars = 0;
+    for (int i = 0; i < predicates.length; i++) {
+      numParams += params[i].getOutcomes().length;
+      numChars += predicates[i].length();
+    }
+    final int numSlots = getNumSlots(predicates.length);
+    final int[] slots = new int[numSlots];
+    Arrays.fill(slots, EMPTY);
+    for (int i = 0; i < predicates.length; i++) {
+      int slot = hash(predicates[i]) & (numSlots - 1);
+      while (slots[slot] != EMPTY) {
+        slot = (slot + 1) & (numSlots - 1);
+      }
+      slots[slot] = i;
+    }
+
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(output)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(shell.size());
+      shell.writeTo(out);
+      out.writeInt(model.getModelType().ordinal());
+      out.writeDouble(correctionConstant);
+      out.writeDouble(correctionParam);
+      out.writeInt(outcomes.length);
+      out.writeInt(predicates.length);
+      out.writeInt(numParams);
+      out.writeInt(numSlots);
+      out.writeInt(numChars);
+      for (final String outcome : outcomes) {
+        out.writeShort(outcome.length());
+        out.writeChars(outcome);
+      }
+      int charOffset = 0;
+      int paramOffset = 0;
+      for (int i = 0; i < predicates.length; i++) {
+        final int predicateParams = params[i].getOutcomes().length;
+        out.writeInt(charOffset);
+        out.writeInt(predicates[i].length());
+        out.writeInt(paramOffset);
+        out.writeInt(predicateParams);
+        charOffset += predicates[i].length();
+        paramOffset += predicateParams;
+      }
+      for (final int slot : slots) {
+        out.writeInt(slot);
+      }
+      for (final Context context : params) {
+        for (final int outcome : context.getOutcomes()) {
+          out.writeInt(outcome);
+        }
+      }
+      for (final Context context : params) {
+        for (final double param : context.getParameters()) {
+          out.writeFloat((float) param);
+        }
+      }
+      for (final String predicate : predicates) {
+        out.writeChars(predicate);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Get the predicates of a model, indexed by their number.
+   *
+   * @param predicateMap
+   *          the predicate map of the model data structures
+   * @param numPredicates
+   *          the number of predicates
+   * @return the predicates
+   * @throws IOException
+   *           if the predicate map is not supported
+   */
+  @SuppressWarnings("unchecked")
+  private static String[] getPredicates(final Object predicateMap,
+      final int numPredicates) throws IOException {
+    final String[] predicates = new String[numPredicates];
+    if (predicateMap instanceof Map) {
+      for (final Map.Entry<String, Integer> entry : ((Map<String, Integer>) predicateMap)
+          .entrySet()) {
+        predicates[entry.getValue()] = entry.getKey();
+      }
+    } else if (predicateMap instanceof IndexHashTable) {
+      ((IndexHashTable<String>) predicateMap).toArray(predicates);
+    } else {
+      throw new IOException("Unsupported model predicate map!");
+    }
+    return predicates;
+  }
+
+  /**
+   * Get the size of the predicate index, a power of two at least twice the
+   * number of predicates.
+   *
+   * @param numPredicates
+   *          the number of predicates
+   * @return the number of slots
+   */
+  private static int getNumSlots(final int numPredicates) {
+    int numSlots = 2;
+    while (numSlots < numPredicates * 2) {
+      numSlots <<= 1;
+    }
+    return numSlots;
+  }
+
+  /**
+   * Hash a predicate for the predicate index.
+   *
+   * @param predicate
+   *          the predicate
+   * @return the hash
+   */
+  private static int hash(final String predicate) {
+    final int h = predicate.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * {@link MaxentModel} evaluating over the mapped parameters. It extends
+   * {@link AbstractModel} without parameters of its own, as {@link POSModel}
+   * requires, and normalizes the scores as the model type it was compiled
+   * from, over its float parameters.
+   */
+  private static final class MappedMaxentModel extends AbstractModel {
+
+    private final MappedByteBuffer buffer;
+    private final ModelType type;
+    private final double constantInverse;
+    private final double correctionConstant;
+    private final double correctionParam;
+    private final int numOutcomes;
+    private final int slotMask;
+    private final int predicatesStart;
+    private final int slotsStart;
+    private final int outcomesStart;
+    private final int paramsStart;
+    private final int charsStart;
+    /**
+     * The number of active features of every outcome, reused by the calls of
+     * each thread.
+     */
+    private final ThreadLocal<int[]> numFeaturesBuffer;
+
+    private MappedMaxentModel(final MappedByteBuffer aBuffer, final int start) {
+      super(new Context[0], new String[0], readOutcomes(aBuffer, start));
+      this.buffer = aBuffer;
+      this.type = ModelType.values()[aBuffer.getInt(start)];
+      this.modelType = this.type;
+      this.correctionConstant = aBuffer.getDouble(start + 4);
+      this.constantInverse = 1.0 / this.correctionConstant;
+      this.correctionParam = aBuffer.getDouble(start + 12);
+      this.numOutcomes = aBuffer.getInt(start + 20);
+      final int numPredicates = aBuffer.getInt(start + 24);
+      final int numParams = aBuffer.getInt(start + 28);
+      final int numSlots = aBuffer.getInt(start + 32);
+      this.slotMask = numSlots - 1;
+      int position = start + 40;
+      for (int i = 0; i < this.numOutcomes; i++) {
+        position += 2 + aBuffer.getShort(position) * 2;
+      }
+      this.predicatesStart = position;
+      this.slotsStart = this.predicatesStart + numPredicates * PREDICATE_SIZE;
+      this.outcomesStart = this.slotsStart + numSlots * 4;
+      this.paramsStart = this.outcomesStart + numParams * 4;
+      this.charsStart = this.paramsStart + numParams * 4;
+      final int outcomes = this.numOutcomes;
+      this.numFeaturesBuffer = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+          return new int[outcomes];
+        }
+      };
+    }
+
+    private static String[] readOutcomes(final MappedByteBuffer buffer,
+        final int start) {
+      final String[] outcomes = new String[buffer.getInt(start + 20)];
+      int position = start + 40;
+      for (int i = 0; i < outcomes.length; i++) {
+        final char[] outcome = new char[buffer.getShort(position)];
+        position += 2;
+        for (int j = 0; j < outcome.length; j++) {
+          outcome[j] = buffer.getChar(position);
+          position += 2;
+        }
+        outcomes[i] = new String(outcome);
+      }
+      return outcomes;
+    }
+
+    public double[] eval(final String[] context) {
+      return eval(context, null, new double[this.numOutcomes]);
+    }
+
+    public double[] eval(final String[] context, final double[] probs) {
+      return eval(context, null, probs);
+    }
+
+    public double[] eval(final String[] context, final float[] values) {
+      return eval(context, values, new double[this.numOutcomes]);
+    }
+
+    private double[] eval(final String[] context, final float[] values,
+        final double[] prior) {
+      Arrays.fill(prior, 0, this.numOutcomes, 0.0);
+      final int[] numFeatures = this.numFeaturesBuffer.get();
+      Arrays.fill(numFeatures, 0);
+      for (int ci = 0; ci < context.length; ci++) {
+        final int predicate = getPredicate(context[ci]);
+        if (predicate == EMPTY) {
+          continue;
+        }
+        final double value = values == null ? 1.0 : values[ci];
+        final int entry = this.predicatesStart + predicate * PREDICATE_SIZE;
+        final int first = this.buffer.getInt(entry + 8);
+        final int last = first + this.buffer.getInt(entry + 12);
+        for (int i = first; i < last; i++) {
+          final int outcome = this.buffer.getInt(this.outcomesStart + i * 4);
+          numFeatures[outcome]++;
+          prior[outcome] += this.buffer.getFloat(this.paramsStart + i * 4)
+              * value;
+        }
+      }
+      if (this.type == ModelType.Perceptron) {
+        normalizePerceptron(prior);
+      } else if (this.type == ModelType.MaxentQn) {
+        normalizeQN(prior);
+      } else {
+        normalizeGIS(prior, numFeatures);
+      }
+      return prior;
+    }
+
+    private void normalizeGIS(final double[] prior, final int[] numFeatures) {
+      double normal = 0.0;
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        if (this.correctionParam != 0) {
+          prior[oid] = Math.exp(prior[oid] * this.constantInverse
+              + (1.0 - numFeatures[oid] / this.correctionConstant)
+              * this.correctionParam);
+        } else {
+          prior[oid] = Math.exp(prior[oid] * this.constantInverse);
+        }
+        normal += prior[oid];
+      }
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        prior[oid] /= normal;
+      }
+    }
+
+    private void normalizePerceptron(final double[] prior) {
+      double maxPrior = 1;
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        maxPrior = Math.max(maxPrior, Math.abs(prior[oid]));
+      }
+      double normal = 0.0;
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        prior[oid] = Math.exp(prior[oid] / maxPrior);
+        normal += prior[oid];
+      }
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        prior[oid] /= normal;
+      }
+    }
+
+    private void normalizeQN(final double[] prior) {
+      double max = Double.NEGATIVE_INFINITY;
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        max = Math.max(max, prior[oid]);
+      }
+      double sum = 0.0;
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        sum += Math.exp(prior[oid] - max);
+      }
+      final double logSumExp = max + Math.log(sum);
+      for (int oid = 0; oid < this.numOutcomes; oid++) {
+        prior[oid] = Math.exp(prior[oid] - logSumExp);
+      }
+    }
+
+    /**
+     * Look up a predicate in the mapped predicate index.
+     *
+     * @param predicate
+     *          the predicate
+     * @return the number of the predicate or {@value MappedPOSModel#EMPTY}
+     *         if the model does not contain it
+     */
+    private int getPredicate(final String predicate) {
+      int slot = hash(predicate) & this.slotMask;
+      while (true) {
+        final int candidate = this.buffer.getInt(this.slotsStart + slot * 4);
+        if (candidate == EMPTY || matches(candidate, predicate)) {
+          return candidate;
+        }
+        slot = (slot + 1) & this.slotMask;
+      }
+    }
+
+    private boolean matches(final int candidate, final String predicate) {
+      final int entry = this.predicatesStart + candidate * PREDICATE_SIZE;
+      final int length = this.buffer.getInt(entry + 4);
+      if (length != predicate.length()) {
+        return false;
+      }
+      final int offset = this.charsStart + this.buffer.getInt(entry) * 2;
+      for (int i = 0; i < length; i++) {
+        if (this.buffer.getChar(offset + i * 2) != predicate.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import opennlp.tools.postag.POSModel;
+
+/**
+ * Registry of the models loaded in the JVM. A model is identified by the
+ * canonical path of its file, so different models for the same language are
+ * kept apart and every model file is loaded once, the first time it is
+ * acquired, however many taggers use it. Loading does not read the file
+ * beyond what the model format needs, so memory mapped models stay cheap to
+ * load.
+ *
+ * Every {@link #acquire(String)} must be matched by a {@link #release(POSModel)}
+ * of the returned model. Models nobody holds are removed by {@link #evict()}.
+ * {@link #reload(String)} checks whether the size or modification date of a
+ * model file changed and, if so, loads it and atomically replaces the
+ * registered model. Models loaded by a reload also keep the checksum of their
+ * file, so once a model was reloaded, a file whose size or date changed but
+ * whose checksum did not is not loaded again; models loaded on first use are
+ * not checksummed, so the first change of their size or date reloads them.
+ * Replacing the registered model is atomic: later acquisitions get the new
+ * model while the holders of the old one keep it until they release it.
+ * {@link #revert(String)} puts the old model back if the new one turns out to
+ * be unusable.
+ *
+ * @author ragerri
+ * @version 2015-04-25
+ */
+public final class ModelRegistry {
+
+  /**
+   * The registry of the JVM.
+   */
+  private static final ModelRegistry INSTANCE = new ModelRegistry();
+
+  /**
+   * The current model of every canonical model path.
+   */
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+  /**
+   * The entry of every model acquired and not yet released.
+   */
+  private final Map<POSModel, Entry> acquired = new IdentityHashMap<POSModel, Entry>();
+
+  private ModelRegistry() {
+  }
+
+  /**
+   * Get the registry of the JVM.
+   *
+   * @return the registry
+   */
+  public static ModelRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Get a model, loading it if it is not registered yet.
+   *
+   * @param model
+   *          the model file
+   * @return the model
+   * @throws IOException
+   *           if the model can not be read
+   */
+  public POSModel acquire(final String model) throws IOException {
+    final String path = new File(model).getCanonicalPath();
+    final Entry entry;
+    synchronized (this) {
+      Entry current = this.entries.get(path);
+      if (current == null) {
+        current = new Entry(new File(path));
+        this.entries.put(path, current);
+      }
+      current.references++;
+      current.reloaded = false;
+      entry = current;
+    }
+    final POSModel posModel;
+    try {
+      posModel = entry.getModel();
+    } catch (final IOException e) {
+      synchronized (this) {
+        entry.references--;
+        if (entry.references == 0) {
+          this.entries.remove(path, entry);
+        }
+      }
+      throw e;
+    }
+    synchronized (this) {
+      this.acquired.put(posModel, entry);
+    }
+    return posModel;
+  }
+
+  /**
+   * Release a model obtained from {@link #acquire(String)}. A model replaced
+   * by {@link #reload(String)} is dropped when its last holder releases it.
+   *
+   * @param posModel
+   *          the model
+   */
+  public synchronized void release(final POSModel posModel) {
+    final Entry entry = this.acquired.get(posModel);
+    if (entry == null) {
+      throw new IllegalArgumentException("Model not acquired from the registry!");
+    }
+    entry.references--;
+    if (entry.references == 0) {
+      this.acquired.remove(posModel);
+      // a model nobody holds can not be reverted to
+      for (final Entry current : this.entries.values()) {
+        if (current.replaced == entry) {
+          current.replaced = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the number of holders of the registered model of a file.
+   *
+   * @param model
+   *          the model file
+   * @return the number of holders, 0 if the model is not registered
+   * @throws IOException
+   *           if the canonical path can not be resolved
+   */
+  public synchronized int getReferenceCount(final String model)
+      throws IOException {
+    final Entry entry = this.entries.get(new File(model).getCanonicalPath());
+    return entry == null ? 0 : entry.references;
+  }
+
+  /**
+   * Remove the registered models nobody holds.
+   *
+   * @return the number of models removed
+   */
+  public synchronized int evict() {
+    int evicted = 0;
+    final Iterator<Entry> iterator = this.entries.values().iterator();
+    while (iterator.hasNext()) {
+      final Entry entry = iterator.next();
+      // a reloaded model is kept until it is acquired
+      if (entry.references == 0 && !entry.reloaded) {
+        iterator.remove();
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Check whether the size or modification date of the file of a registered
+   * model changed and, if so, load it and replace the registered model. If
+   * the registered model was itself loaded by a reload, the checksum of the
+   * file is compared first and files touched without changing them are not
+   * loaded again.
+   *
+   * @param model
+   *          the model file
+   * @return true if the registered model was replaced
+   * @throws IOException
+   *           if the new model can not be read; the registered model is kept
+   *           and the file is not read again until it changes again
+   */
+  public boolean reload(final String model) throws IOException {
+    final String path = new File(model).getCanonicalPath();
+    final Entry current = this.entries.get(path);
+    if (current == null || !current.isModified()) {
+      return false;
+    }
+    synchronized (current.reloadLock) {
+      if (this.entries.get(path) != current || !current.isModified()) {
+        return false;
+      }
+      final Entry replacement = new Entry(current.file);
+      try {
+        if (current.checksummed
+            && replacement.getChecksum() == current.checksum) {
+          current.touch(replacement);
+          return false;
+        }
+        replacement.getChecksum();
+        replacement.getModel();
+      } catch (final IOException e) {
+        // do not retry the same broken file on every call
+        current.touch(replacement);
+        throw e;
+      } catch (final RuntimeException e) {
+        current.touch(replacement);
+        throw new IOException("Invalid model " + current.file + ": "
+            + e.getMessage(), e);
+      }
+      synchronized (this) {
+        replacement.reloaded = true;
+        if (current.references > 0) {
+          replacement.replaced = current;
+        }
+        this.entries.put(path, replacement);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Put back the model replaced by the last {@link #reload(String)} of a file,
+   * if it is still held, e.g., because the annotator of the new model could
+   * not be built. The file is not reloaded again until it changes again.
+   *
+   * @param model
+   *          the model file
+   * @return true if the replaced model was put back
+   * @throws IOException
+   *           if the canonical path can not be resolved
+   */
+  public synchronized boolean revert(final String model) throws IOException {
+    final String path = new File(model).getCanonicalPath();
+    final Entry current = this.entries.get(path);
+    if (current == null || current.replaced == null) {
+      return false;
+    }
+    final Entry previous = current.replaced;
+    current.replaced = null;
+    previous.touch(current);
+    this.entries.put(path, previous);
+    return true;
+  }
+
+  /**
+   * Compute the checksum of a file.
+   *
+   * @param file
+   *          the file
+   * @return the CRC32 of its content
+   * @throws IOException
+   *           if the file can not be read
+   */
+  private static long checksum(final File file) throws IOException {
+    final CRC32 crc = new CRC32();
+    final byte[] buffer = new byte[64 * 1024];
+    final InputStream in = new FileInputStream(file);
+    try {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * A model file, its size and date, the model, loaded on first use, and the
+   * checksum of the file, computed when checking a reload.
+   */
+  private static final class Entry {
+
+    private final File file;
+    private final Object reloadLock = new Object();
+    private volatile long length;
+    private volatile long lastModified;
+    private volatile long checksum;
+    private volatile boolean checksummed;
+    private POSModel model;
+    /**
+     * Whether the model replaced a changed one and was not acquired yet;
+     * guarded by the registry.
+     */
+    private boolean reloaded;
+    /**
+     * The model this one replaced while it is still held, so that the reload
+     * can be reverted; guarded by the registry.
+     */
+    private Entry replaced;
+    /**
+     * The holders of the model; guarded by the registry.
+     */
+    private int references;
+
+    private Entry(final File aFile) {
+      this.file = aFile;
+      this.length = aFile.length();
+      this.lastModified = aFile.lastModified();
+    }
+
+    private synchronized long getChecksum() throws IOException {
+      if (!this.checksummed) {
+        this.checksum = checksum(this.file);
+        this.checksummed = true;
+      }
+      return this.checksum;
+    }
+
+    private synchronized POSModel getModel() throws IOException {
+      if (this.model == null) {
+        final long lStartTime = new Date().getTime();
+        this.model = MappedPOSModel.read(this.file);
+        final long lEndTime = new Date().getTime();
+        final long difference = lEndTime - lStartTime;
+        System.err.println("ixa-pipe-pos model loaded in: " + difference
+            + " miliseconds ... [DONE]");
+      }
+      return this.model;
+    }
+
+    private boolean isModified() {
+      return this.file.length() != this.length
+          || this.file.lastModified() != this.lastModified;
+    }
+
+    /**
+     * Take the size and date of a file checked again, unchanged or broken.
+     */
+    private void touch(final Entry checked) {
+      this.length = checked.length;
+      this.lastModified = checked.lastModified;
+    }
+  }
+
+}
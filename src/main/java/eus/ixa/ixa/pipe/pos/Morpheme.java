@@ -33,6 +33,10 @@ public class Morpheme {
    * The morphological tag of the morpheme.
    */
   private String tag;
+  /**
+   * The id of the tag in the {@link TagAlphabet} of the model.
+   */
+  private int tagId = TagAlphabet.UNKNOWN;
   /**
    * The lemma of the morpheme.
    */
@@ -91,6 +95,17 @@ public class Morpheme {
     return this.tag;
   }
 
+  /**
+   * Get the id of the morphological tag in the {@link TagAlphabet} of the
+   * model.
+   * 
+   * @return the id or {@link TagAlphabet#UNKNOWN} if the tag is not in the
+   *         alphabet
+   */
+  public final int getTagId() {
+    return this.tagId;
+  }
+
   /**
    * Get the lemma.
    * 
@@ -118,6 +133,21 @@ public class Morpheme {
    */
   public final void setTag(final String aTag) {
     this.tag = aTag.toUpperCase();
+    this.tagId = TagAlphabet.UNKNOWN;
+  }
+
+  /**
+   * Set the morphological tag from a {@link TagAlphabet}. The tag is already
+   * uppercased by the alphabet.
+   * 
+   * @param aTag
+   *          the uppercased morphological tag
+   * @param aTagId
+   *          the id of the tag in the alphabet
+   */
+  public final void setTag(final String aTag, final int aTagId) {
+    this.tag = aTag;
+    this.tagId = aTagId;
   }
 
   /**
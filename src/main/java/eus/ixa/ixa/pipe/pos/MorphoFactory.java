@@ -40,6 +40,26 @@ public class MorphoFactory {
     return morpheme;
   }
 
+  /**
+   * Construct morpheme object with word and a morphological tag of a
+   * {@link TagAlphabet}.
+   * 
+   * @param word
+   *          the word
+   * @param tag
+   *          the uppercased morphological tag
+   * @param tagId
+   *          the id of the tag in the alphabet
+   * @return the morpheme object
+   */
+  public final Morpheme createMorpheme(final String word, final String tag,
+      final int tagId) {
+    final Morpheme morpheme = new Morpheme();
+    morpheme.setValue(word);
+    morpheme.setTag(tag, tagId);
+    return morpheme;
+  }
+
   /**
    * Construct morpheme object with word, tag and lemma.
    * 
@@ -15,20 +15,27 @@
 
 package eus.ixa.ixa.pipe.pos;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTaggerME;
+import eus.ixa.ixa.pipe.pos.train.BaselineContextGenerator;
 
 /**
- * POS tagging module based on Apache OpenNLP machine learning API.
+ * POS tagging module based on Apache OpenNLP machine learning API. The model
+ * is obtained from the {@link ModelRegistry}, so it is shared by every
+ * instance using the same model file, and every thread gets its own
+ * {@link POSTaggerME} over it, so one instance can be used concurrently. The
+ * beam size can be chosen for each call; a beam size of 1 uses the
+ * {@link GreedyPOSTagger} if the model supports it. The taggers of at most
+ * {@value #MAX_CACHED_BEAM_SIZES} beam sizes are kept; every thread keeps one
+ * more tagger for the last other beam size it used, replaced when it uses
+ * another one.
  * 
  * @author ragerri
  * @version 2014-04-24
@@ -37,14 +44,38 @@ import opennlp.tools.postag.POSTaggerME;
 public class MorphoTagger {
 
   /**
-   * The morpho tagger.
+   * Maximum number of beam sizes whose per thread taggers are kept.
    */
-  private final POSTaggerME posTagger;
+  public static final int MAX_CACHED_BEAM_SIZES = 8;
+
+  /**
+   * The model of this tagger.
+   */
+  private final POSModel posModel;
+  /**
+   * The beam size used if none is given.
+   */
+  private final int beamSize;
+  /**
+   * The morpho taggers of each thread for every beam size used so far.
+   * {@link POSTaggerME} keeps the beam search and context cache state, so it
+   * can not be shared across threads.
+   */
+  private final ConcurrentHashMap<Integer, ThreadLocal<POSTaggerME>> posTaggers = new ConcurrentHashMap<Integer, ThreadLocal<POSTaggerME>>();
+  /**
+   * The greedy decoder of each thread, null if the model does not support
+   * greedy decoding.
+   */
+  private final ThreadLocal<GreedyPOSTagger> greedyTagger;
+  /**
+   * The tagger of each thread for the last beam size used that is not one of
+   * the kept beam sizes.
+   */
+  private final ThreadLocal<SentenceTagger> lastTagger = new ThreadLocal<SentenceTagger>();
   /**
-   * The models to use for every language. The keys of the hash are the language
-   * codes, the values the models.
+   * The postags of the model.
    */
-  private static ConcurrentHashMap<String, POSModel> posModels = new ConcurrentHashMap<String, POSModel>();
+  private final TagAlphabet tagAlphabet;
   /**
    * The morpho factory.
    */
@@ -55,13 +86,20 @@ public class MorphoTagger {
    * 
    * @param props
    *          the properties object
+   * @throws IOException
+   *           if the model can not be loaded
    */
-  public MorphoTagger(final Properties props) {
-    final String lang = props.getProperty("language");
+  public MorphoTagger(final Properties props) throws IOException {
     final String model = props.getProperty("model");
-    final int beamSize = Integer.parseInt(props.getProperty("beamSize"));
-    final POSModel posModel = loadModel(lang, model);
-    this.posTagger = new POSTaggerME(posModel, beamSize, beamSize);
+    this.beamSize = Integer.parseInt(props.getProperty("beamSize"));
+    this.posModel = ModelRegistry.getInstance().acquire(model);
+    try {
+      this.greedyTagger = createGreedyTaggers(this.posModel);
+      this.tagAlphabet = new TagAlphabet(getAllPosTags());
+    } catch (final RuntimeException e) {
+      ModelRegistry.getInstance().release(this.posModel);
+      throw e;
+    }
   }
 
   /**
@@ -71,16 +109,100 @@ public class MorphoTagger {
    *          the properties object
    * @param aMorphoFactory
    *          the morpho factory
+   * @throws IOException
+   *           if the model can not be loaded
    */
-  public MorphoTagger(final Properties props, final MorphoFactory aMorphoFactory) {
-    final String lang = props.getProperty("language");
-    final String model = props.getProperty("model");
-    final int beamSize = Integer.parseInt(props.getProperty("beamSize"));
-    final POSModel posModel = loadModel(lang, model);
-    this.posTagger = new POSTaggerME(posModel, beamSize, beamSize);
+  public MorphoTagger(final Properties props, final MorphoFactory aMorphoFactory)
+      throws IOException {
+    this(props);
     this.morphoFactory = aMorphoFactory;
   }
 
+  /**
+   * Create the per thread greedy decoders over a shared model.
+   * 
+   * @param posModel
+   *          the model
+   * @return the thread local decoders or null if the model can not be decoded
+   *         greedily
+   */
+  private static ThreadLocal<GreedyPOSTagger> createGreedyTaggers(
+      final POSModel posModel) {
+    if (!GreedyPOSTagger.isSupported(posModel)) {
+      return null;
+    }
+    return new ThreadLocal<GreedyPOSTagger>() {
+      @Override
+      protected GreedyPOSTagger initialValue() {
+        return new GreedyPOSTagger(posModel);
+      }
+    };
+  }
+
+  /**
+   * Get the tagger of the current thread for a beam size, creating the per
+   * thread taggers the first time the beam size is used. Once
+   * {@value #MAX_CACHED_BEAM_SIZES} beam sizes are kept, the tagger of any
+   * other beam size is kept until the thread uses yet another beam size.
+   * 
+   * @param aBeamSize
+   *          the beam size for decoding
+   * @return the tagger
+   */
+  private POSTaggerME getTagger(final int aBeamSize) {
+    ThreadLocal<POSTaggerME> taggers = this.posTaggers.get(aBeamSize);
+    if (taggers == null) {
+      final POSModel model = this.posModel;
+      if (this.posTaggers.size() >= MAX_CACHED_BEAM_SIZES) {
+        SentenceTagger tagger = this.lastTagger.get();
+        if (tagger == null || tagger.beamSize != aBeamSize) {
+          tagger = new SentenceTagger(model, aBeamSize);
+          this.lastTagger.set(tagger);
+        }
+        return tagger;
+      }
+      taggers = new ThreadLocal<POSTaggerME>() {
+        @Override
+        protected POSTaggerME initialValue() {
+          return new SentenceTagger(model, aBeamSize);
+        }
+      };
+      final ThreadLocal<POSTaggerME> previous = this.posTaggers.putIfAbsent(
+          aBeamSize, taggers);
+      if (previous != null) {
+        taggers = previous;
+      }
+    }
+    return taggers.get();
+  }
+
+  /**
+   * Get the beam size used if none is given.
+   * 
+   * @return the default beam size
+   */
+  public final int getBeamSize() {
+    return this.beamSize;
+  }
+
+  /**
+   * Get every postag of the model.
+   * 
+   * @return the postags
+   */
+  public final String[] getAllPosTags() {
+    return getTagger(this.beamSize).getAllPosTags();
+  }
+
+  /**
+   * Get the alphabet of the postags of the model.
+   * 
+   * @return the tag alphabet
+   */
+  public final TagAlphabet getTagAlphabet() {
+    return this.tagAlphabet;
+  }
+
   /**
    * Get morphological analysis from a tokenized sentence.
    * 
@@ -89,12 +211,73 @@ public class MorphoTagger {
    * @return a list of {@code Morpheme} objects containing morphological info
    */
   public final List<Morpheme> getMorphemes(final String[] tokens) {
-    final List<String> origPosTags = posAnnotate(tokens);
+    return getMorphemes(tokens, this.beamSize);
+  }
+
+  /**
+   * Get morphological analysis from a tokenized sentence decoding with a given
+   * beam size.
+   * 
+   * @param tokens
+   *          the tokenized sentence
+   * @param aBeamSize
+   *          the beam size for decoding, 1 for greedy decoding
+   * @return a list of {@code Morpheme} objects containing morphological info
+   */
+  public final List<Morpheme> getMorphemes(final String[] tokens,
+      final int aBeamSize) {
+    final List<String> origPosTags = posAnnotate(tokens, aBeamSize);
     final List<Morpheme> morphemes = getMorphemesFromStrings(origPosTags,
         tokens);
     return morphemes;
   }
 
+  /**
+   * Tag the tokens of a {@link TaggedSentence}, filling its postags, postag ids
+   * and probabilities.
+   * 
+   * @param sentence
+   *          the sentence
+   */
+  public final void tag(final TaggedSentence sentence) {
+    tag(sentence, this.beamSize);
+  }
+
+  /**
+   * Tag the tokens of a {@link TaggedSentence} decoding with a given beam
+   * size, filling its postags, postag ids and probabilities. Greedy decoding
+   * writes straight into the arrays of the sentence.
+   * 
+   * @param sentence
+   *          the sentence
+   * @param aBeamSize
+   *          the beam size for decoding, 1 for greedy decoding
+   */
+  public final void tag(final TaggedSentence sentence, final int aBeamSize) {
+    if (aBeamSize < 1) {
+      throw new IllegalArgumentException("Beam size must be at least 1: "
+          + aBeamSize);
+    }
+    final String[] tokens = sentence.getTokens();
+    final String[] tags = sentence.getTags();
+    final double[] probs = sentence.getProbs();
+    if (aBeamSize == 1 && this.greedyTagger != null) {
+      this.greedyTagger.get().tag(tokens, tags, probs);
+    } else {
+      final POSTaggerME posTagger = getTagger(aBeamSize);
+      System.arraycopy(posTagger.tag(tokens), 0, tags, 0, tokens.length);
+      System.arraycopy(posTagger.probs(), 0, probs, 0, tokens.length);
+    }
+    for (int i = 0; i < tokens.length; i++) {
+      final int tagId = this.tagAlphabet.getId(tags[i]);
+      if (tagId == TagAlphabet.UNKNOWN) {
+        sentence.setTag(i, tags[i].toUpperCase(), tagId);
+      } else {
+        sentence.setTag(i, this.tagAlphabet.getTag(tagId), tagId);
+      }
+    }
+  }
+
   /**
    * Produce postags from a tokenized sentence.
    * 
@@ -103,14 +286,38 @@ public class MorphoTagger {
    * @return a list containing the postags
    */
   public final List<String> posAnnotate(final String[] tokens) {
-    final String[] annotatedText = this.posTagger.tag(tokens);
+    return posAnnotate(tokens, this.beamSize);
+  }
+
+  /**
+   * Produce postags from a tokenized sentence decoding with a given beam size.
+   * 
+   * @param tokens
+   *          the sentence
+   * @param aBeamSize
+   *          the beam size for decoding, 1 for greedy decoding
+   * @return a list containing the postags
+   */
+  public final List<String> posAnnotate(final String[] tokens,
+      final int aBeamSize) {
+    if (aBeamSize < 1) {
+      throw new IllegalArgumentException("Beam size must be at least 1: "
+          + aBeamSize);
+    }
+    final String[] annotatedText;
+    if (aBeamSize == 1 && this.greedyTagger != null) {
+      annotatedText = this.greedyTagger.get().tag(tokens);
+    } else {
+      annotatedText = getTagger(aBeamSize).tag(tokens);
+    }
     final List<String> posTags = new ArrayList<String>(
         Arrays.asList(annotatedText));
     return posTags;
   }
 
   /**
-   * Create {@code Morpheme} objects from the output of posAnnotate.
+   * Create {@code Morpheme} objects from the output of posAnnotate. The postags
+   * of the model get their uppercased form and id from the tag alphabet.
    * 
    * @param posTags
    *          the postags
@@ -120,38 +327,54 @@ public class MorphoTagger {
    */
   public final List<Morpheme> getMorphemesFromStrings(
       final List<String> posTags, final String[] tokens) {
-    final List<Morpheme> morphemes = new ArrayList<Morpheme>();
+    final List<Morpheme> morphemes = new ArrayList<Morpheme>(posTags.size());
     for (int i = 0; i < posTags.size(); i++) {
       final String word = tokens[i];
       final String tag = posTags.get(i);
-      final Morpheme morpheme = this.morphoFactory.createMorpheme(word, tag);
+      final int tagId = this.tagAlphabet.getId(tag);
+      final Morpheme morpheme;
+      if (tagId == TagAlphabet.UNKNOWN) {
+        morpheme = this.morphoFactory.createMorpheme(word, tag);
+      } else {
+        morpheme = this.morphoFactory.createMorpheme(word,
+            this.tagAlphabet.getTag(tagId), tagId);
+      }
       morphemes.add(morpheme);
     }
     return morphemes;
   }
 
   /**
-   * Loads statically the probabilistic model. Every instance of this finder
-   * will share the same model.
-   * 
-   * @param lang
-   *          the language
-   * @param model
-   *          the model to be loaded
-   * @return the model as a {@link POSModel} object
-   */
-  private final POSModel loadModel(final String lang, final String model) {
-    final long lStartTime = new Date().getTime();
-    try {
-      posModels.putIfAbsent(lang, new POSModel(new FileInputStream(model)));
-    } catch (final IOException e) {
-      e.printStackTrace();
+   * Release the model of this tagger to the {@link ModelRegistry}. The tagger
+   * must not be used afterwards.
+   */
+  public final void close() {
+    if (this.posModel != null) {
+      ModelRegistry.getInstance().release(this.posModel);
+    }
+  }
+
+  /**
+   * A {@link POSTaggerME} that starts a new sentence in its context generator
+   * before tagging, so that the features of a previous sentence are never
+   * reused for a token array that is reused.
+   */
+  private static final class SentenceTagger extends POSTaggerME {
+
+    private final int beamSize;
+
+    private SentenceTagger(final POSModel model, final int aBeamSize) {
+      super(model, aBeamSize, aBeamSize);
+      this.beamSize = aBeamSize;
+    }
+
+    @Override
+    public String[] tag(final String[] sentence) {
+      if (this.contextGen instanceof BaselineContextGenerator) {
+        ((BaselineContextGenerator) this.contextGen).startSentence();
+      }
+      return super.tag(sentence);
     }
-    final long lEndTime = new Date().getTime();
-    final long difference = lEndTime - lStartTime;
-    System.err.println("ixa-pipe-pos model loaded in: " + difference
-        + " miliseconds ... [DONE]");
-    return posModels.get(lang);
   }
 
 }
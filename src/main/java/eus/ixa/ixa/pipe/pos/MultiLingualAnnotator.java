@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import com.google.common.io.Files;
+
+/**
+ * Holds one loaded {@link Annotate} per configured language and annotates
+ * every NAF document with the annotator of its language, so documents in
+ * several languages are tagged in one process without reloading the models.
+ *
+ * The configuration lists the languages in the languages property, e.g.,
+ * "languages=en,es,gl", and every annotation property of a language is read
+ * from "&lt;lang&gt;.&lt;property&gt;", e.g., "es.model" or "gl.directory"
+ * for the directory of the resources, falling back to the property without
+ * prefix, which is shared by every language. Without the languages property
+ * the configuration is that of a single annotator for the language property.
+ *
+ * @author ragerri
+ * @version 2015-04-25
+ */
+public class MultiLingualAnnotator {
+
+  /**
+   * The annotation properties that can be set per language.
+   */
+  private static final String[] LANGUAGE_PROPERTIES = { "model", "beamSize",
+      "multiwords", "dictag", "directory", "lemmatizerDict", "tagsetMapping",
+      "lemmaCacheSize", "parallel" };
+  /**
+   * The beam size of the languages that do not set one.
+   */
+  private static final String DEFAULT_BEAM_SIZE = "3";
+
+  /**
+   * The annotator of every language, by lowercased language code.
+   */
+  private final Map<String, Annotate> annotators = new LinkedHashMap<String, Annotate>();
+  /**
+   * The name of the model of every language, used in the NAF linguistic
+   * processor header.
+   */
+  private final Map<String, String> modelNames = new LinkedHashMap<String, String>();
+
+  /**
+   * Load the annotator of every configured language. If a language can not be
+   * loaded the annotators of the languages loaded before are closed.
+   *
+   * @param config
+   *          the configuration
+   * @throws IOException
+   *           if the models or dictionaries can not be loaded
+   */
+  public MultiLingualAnnotator(final Properties config) throws IOException {
+    final String languages = config.getProperty("languages",
+        config.getProperty("language"));
+    if (languages == null) {
+      throw new IllegalArgumentException("No languages configured!");
+    }
+    try {
+      loadAnnotators(config, languages);
+    } catch (final IOException e) {
+      close();
+      throw e;
+    } catch (final RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Load the annotator of every language of a list.
+   *
+   * @param config
+   *          the configuration
+   * @param languages
+   *          the comma separated languages
+   * @throws IOException
+   *           if the models or dictionaries can not be loaded
+   */
+  private void loadAnnotators(final Properties config, final String languages)
+      throws IOException {
+    for (final String language : languages.split(",")) {
+      final String lang = language.trim().toLowerCase();
+      if (lang.length() == 0 || this.annotators.containsKey(lang)) {
+        continue;
+      }
+      final Properties properties = getLanguageProperties(config, lang);
+      if (properties.getProperty("model") == null) {
+        throw new IllegalArgumentException("No model configured for language "
+            + lang + "!");
+      }
+      this.annotators.put(lang, new Annotate(properties));
+      this.modelNames.put(lang,
+          Files.getNameWithoutExtension(properties.getProperty("model")));
+    }
+  }
+
+  /**
+   * Get the annotation properties of a language.
+   *
+   * @param config
+   *          the configuration
+   * @param lang
+   *          the language
+   * @return the properties
+   */
+  private static Properties getLanguageProperties(final Properties config,
+      final String lang) {
+    final Properties properties = new Properties();
+    properties.setProperty("language", lang);
+    properties.setProperty("beamSize", DEFAULT_BEAM_SIZE);
+    for (final String key : LANGUAGE_PROPERTIES) {
+      final String value = config.getProperty(lang + "." + key,
+          config.getProperty(key));
+      if (value != null) {
+        properties.setProperty(key, value);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Get the configured languages.
+   *
+   * @return the lowercased language codes
+   */
+  public final Set<String> getLanguages() {
+    return Collections.unmodifiableSet(this.annotators.keySet());
+  }
+
+  /**
+   * Get the annotator of a language.
+   *
+   * @param lang
+   *          the language
+   * @return the annotator
+   * @throws IllegalArgumentException
+   *           if the language is null or not configured
+   */
+  public final Annotate getAnnotator(final String lang) {
+    if (lang == null) {
+      throw new IllegalArgumentException(
+          "the document has no language, expected one of "
+              + getLanguages());
+    }
+    final Annotate annotator = this.annotators.get(lang.toLowerCase());
+    if (annotator == null) {
+      throw new IllegalArgumentException("language of the document " + lang
+          + " is not one of the configured languages " + getLanguages());
+    }
+    return annotator;
+  }
+
+  /**
+   * Get the name of the model of a language.
+   *
+   * @param lang
+   *          the language
+   * @return the name of the model file without extension
+   * @throws IllegalArgumentException
+   *           if the language is null or not configured
+   */
+  public final String getModelName(final String lang) {
+    getAnnotator(lang);
+    return this.modelNames.get(lang.toLowerCase());
+  }
+
+  /**
+   * Annotate morphological information into a NAF document with the
+   * annotator of its language.
+   *
+   * @param kaf
+   *          the NAF document
+   */
+  public final void annotatePOSToKAF(final KAFDocument kaf) {
+    getAnnotator(kaf.getLang()).annotatePOSToKAF(kaf);
+  }
+
+  /**
+   * Annotate morphological information of a NAF document in CoNLL format with
+   * the annotator of its language.
+   *
+   * @param kaf
+   *          the NAF document
+   * @param writer
+   *          the writer of the annotation
+   * @throws IOException
+   *           if the annotation can not be written
+   */
+  public final void annotatePOSToCoNLL(final KAFDocument kaf,
+      final Writer writer) throws IOException {
+    getAnnotator(kaf.getLang()).annotatePOSToCoNLL(kaf, writer);
+  }
+
+  /**
+   * Close the annotator of every language.
+   */
+  public final void close() {
+    for (final Annotate annotator : this.annotators.values()) {
+      annotator.close();
+    }
+  }
+
+}
@@ -17,6 +17,8 @@
 package eus.ixa.ixa.pipe.pos;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -166,6 +168,74 @@ public final class StringUtils {
     return sb.toString().trim();
   }
 
+  /**
+   * Checks whether a string is equal to its uppercased version, that is,
+   * whether {@code word.toUpperCase().equals(word)}, without building the
+   * uppercased copy.
+   * 
+   * @param word
+   *          the string
+   * @return true if the string has no lowercase characters
+   */
+  public static boolean isUpperCase(final String word) {
+    for (int i = 0; i < word.length();) {
+      final int codePoint = word.codePointAt(i);
+      if (Character.isLowerCase(codePoint)
+          || Character.toUpperCase(codePoint) != codePoint) {
+        return false;
+      }
+      i += Character.charCount(codePoint);
+    }
+    return true;
+  }
+
+  /**
+   * Write a string as a quoted JSON string, escaping quotes, backslashes and
+   * control characters, or JSON null if the string is null.
+   * 
+   * @param writer
+   *          the writer
+   * @param string
+   *          the string, may be null
+   * @throws IOException
+   *           if the writer fails
+   */
+  public static void writeJSONString(final Writer writer, final String string)
+      throws IOException {
+    if (string == null) {
+      writer.write("null");
+      return;
+    }
+    writer.write('"');
+    for (int i = 0; i < string.length(); i++) {
+      final char c = string.charAt(i);
+      switch (c) {
+      case '"':
+        writer.write("\\\"");
+        break;
+      case '\\':
+        writer.write("\\\\");
+        break;
+      case '\n':
+        writer.write("\\n");
+        break;
+      case '\r':
+        writer.write("\\r");
+        break;
+      case '\t':
+        writer.write("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          writer.write(String.format("\\u%04x", (int) c));
+        } else {
+          writer.write(c);
+        }
+      }
+    }
+    writer.write('"');
+  }
+
   /**
    * Recursively get every file in a directory and add them to a list.
    * 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The postags of a model, uppercased once and numbered. Every postag has an
+ * integer id, the index of the postag among the outcomes of the model, and a
+ * single uppercased {@code String} instance, so the stages after tagging can
+ * compare postags by id or reference instead of recasing and rehashing them
+ * for every token.
+ *
+ * The alphabet is built when the model is loaded and is read-only afterwards,
+ * so it can be shared across threads.
+ *
+ * @author ragerri
+ * @version 2015-04-24
+ */
+public class TagAlphabet {
+
+  /**
+   * The id of the postags that are not in the alphabet.
+   */
+  public static final int UNKNOWN = -1;
+
+  /**
+   * The uppercased postags, indexed by id.
+   */
+  private final String[] tags;
+  /**
+   * The id of every postag, both as in the model and uppercased.
+   */
+  private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+  /**
+   * Build the alphabet of the postags of a model.
+   *
+   * @param modelTags
+   *          the postags, in the order of the outcomes of the model
+   */
+  public TagAlphabet(final String[] modelTags) {
+    this.tags = new String[modelTags.length];
+    for (int id = 0; id < modelTags.length; id++) {
+      final String upperCaseTag = modelTags[id].toUpperCase();
+      final Integer previous = this.ids.get(upperCaseTag);
+      if (previous != null) {
+        // postags differing only in case are one postag once uppercased
+        this.tags[id] = this.tags[previous];
+      } else {
+        this.tags[id] = upperCaseTag;
+        this.ids.put(upperCaseTag, id);
+      }
+      if (!this.ids.containsKey(modelTags[id])) {
+        this.ids.put(modelTags[id], id);
+      }
+    }
+  }
+
+  /**
+   * Get the id of a postag, in any case.
+   *
+   * @param tag
+   *          the postag
+   * @return the id or {@value #UNKNOWN} if the postag is not in the alphabet
+   */
+  public final int getId(final String tag) {
+    Integer id = this.ids.get(tag);
+    if (id == null) {
+      id = this.ids.get(tag.toUpperCase());
+    }
+    return id == null ? UNKNOWN : id;
+  }
+
+  /**
+   * Get the uppercased postag of an id.
+   *
+   * @param id
+   *          the id
+   * @return the postag
+   */
+  public final String getTag(final int id) {
+    return this.tags[id];
+  }
+
+  /**
+   * Get the number of ids.
+   *
+   * @return the number of ids
+   */
+  public final int size() {
+    return this.tags.length;
+  }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Maps the postags of a model to the NAF pos tagset and term type. The
+ * mapping is read from a file of ordered rules, one per line:
+ *
+ * <pre>
+ * exact CC C
+ * prefix NNP R
+ * default O
+ * </pre>
+ *
+ * An exact rule matches a postag ignoring case, a prefix rule matches the
+ * postags starting with it and the first matching rule gives the NAF pos; the
+ * default rule, or "O" if there is none, applies to the rest. Lines starting
+ * with '#' are comments. The term type is "open" for nouns, verbs, adjectives
+ * and adverbs and "close" otherwise.
+ *
+ * The mapping of every postag of the model is computed once, so mapping a
+ * postag is a single array lookup by its {@link TagAlphabet} id, or a hash
+ * lookup for postags outside the alphabet. The mapping files of the distributed
+ * languages are in the tagset-mappings resources directory.
+ *
+ * @author ragerri
+ * @version 2015-04-24
+ */
+public class TagSetMapping {
+
+  /**
+   * The NAF pos of the postags no rule matches, unless set by a default rule.
+   */
+  public static final String DEFAULT_POS = "O";
+  private static final String OPEN = "open";
+  private static final String CLOSE = "close";
+  private static final Pattern spacePattern = Pattern.compile("\\s+");
+
+  /**
+   * The rules, in order.
+   */
+  private final List<String[]> rules = new ArrayList<String[]>();
+  /**
+   * The NAF pos of the postags no rule matches.
+   */
+  private String defaultPos = DEFAULT_POS;
+  /**
+   * The NAF pos and term type of every postag mapped so far.
+   */
+  private final ConcurrentHashMap<String, String[]> mappings = new ConcurrentHashMap<String, String[]>();
+  /**
+   * The NAF pos of every postag of the alphabet, indexed by id.
+   */
+  private String[] posById = new String[0];
+  /**
+   * The term type of every postag of the alphabet, indexed by id.
+   */
+  private String[] termTypeById = new String[0];
+
+  /**
+   * Create a mapping without rules, mapping every postag to
+   * {@value #DEFAULT_POS}.
+   */
+  public TagSetMapping() {
+  }
+
+  /**
+   * Read a mapping file.
+   *
+   * @param mappingFile
+   *          the mapping file
+   * @throws IOException
+   *           if the file can not be read or contains a malformed rule
+   */
+  public TagSetMapping(final InputStream mappingFile) throws IOException {
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        mappingFile, Charset.forName("UTF-8")));
+    try {
+      String line;
+      while ((line = breader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        final String[] rule = spacePattern.split(line);
+        if (rule.length == 2 && rule[0].equals("default")) {
+          this.defaultPos = rule[1];
+        } else if (rule.length == 3
+            && (rule[0].equals("exact") || rule[0].equals("prefix"))) {
+          this.rules.add(rule);
+        } else {
+          throw new IOException("Malformed tagset mapping rule: " + line);
+        }
+      }
+    } finally {
+      breader.close();
+    }
+  }
+
+  /**
+   * Get the mapping distributed for a language.
+   *
+   * @param lang
+   *          the language
+   * @return the mapping or null if there is none for the language
+   * @throws IOException
+   *           if the mapping can not be read
+   */
+  public static TagSetMapping getMapping(final String lang) throws IOException {
+    final InputStream mappingFile = TagSetMapping.class
+        .getResourceAsStream("/tagset-mappings/" + lang.toLowerCase() + ".txt");
+    return mappingFile == null ? null : new TagSetMapping(mappingFile);
+  }
+
+  /**
+   * Compute the mapping of every postag of the alphabet of a model.
+   *
+   * @param tagAlphabet
+   *          the postags of the model
+   */
+  public final void precompute(final TagAlphabet tagAlphabet) {
+    final String[] pos = new String[tagAlphabet.size()];
+    final String[] termTypes = new String[tagAlphabet.size()];
+    for (int id = 0; id < tagAlphabet.size(); id++) {
+      final String[] mapping = map(tagAlphabet.getTag(id));
+      pos[id] = mapping[0];
+      termTypes[id] = mapping[1];
+    }
+    this.posById = pos;
+    this.termTypeById = termTypes;
+  }
+
+  /**
+   * Get the NAF pos of a postag of the alphabet given to
+   * {@link #precompute(TagAlphabet)}.
+   *
+   * @param tagId
+   *          the id of the postag
+   * @return the NAF pos
+   */
+  public final String getPos(final int tagId) {
+    return this.posById[tagId];
+  }
+
+  /**
+   * Get the term type of a postag of the alphabet given to
+   * {@link #precompute(TagAlphabet)}.
+   *
+   * @param tagId
+   *          the id of the postag
+   * @return "open" or "close"
+   */
+  public final String getTermType(final int tagId) {
+    return this.termTypeById[tagId];
+  }
+
+  /**
+   * Get the NAF pos of a postag.
+   *
+   * @param postag
+   *          the postag
+   * @return the NAF pos
+   */
+  public final String getPos(final String postag) {
+    return map(postag)[0];
+  }
+
+  /**
+   * Get the term type of a postag.
+   *
+   * @param postag
+   *          the postag
+   * @return "open" or "close"
+   */
+  public final String getTermType(final String postag) {
+    return map(postag)[1];
+  }
+
+  /**
+   * Get the NAF pos and term type of a postag, applying the rules if it was
+   * not mapped before.
+   *
+   * @param postag
+   *          the postag
+   * @return the NAF pos and the term type
+   */
+  private String[] map(final String postag) {
+    String[] mapping = this.mappings.get(postag);
+    if (mapping == null) {
+      final String pos = applyRules(postag);
+      mapping = new String[] { pos, getTermTypeOfPos(pos) };
+      this.mappings.putIfAbsent(postag, mapping);
+    }
+    return mapping;
+  }
+
+  /**
+   * Get the NAF pos given by the first rule matching a postag.
+   *
+   * @param postag
+   *          the postag
+   * @return the NAF pos
+   */
+  private String applyRules(final String postag) {
+    for (final String[] rule : this.rules) {
+      if (rule[0].equals("exact") ? postag.equalsIgnoreCase(rule[1]) : postag
+          .startsWith(rule[1])) {
+        return rule[2];
+      }
+    }
+    return this.defaultPos;
+  }
+
+  /**
+   * Set the term type attribute based on the NAF pos value.
+   *
+   * @param pos
+   *          the NAF pos
+   * @return the type
+   */
+  private static String getTermTypeOfPos(final String pos) {
+    if (pos.startsWith("N") || pos.startsWith("V") || pos.startsWith("G")
+        || pos.startsWith("A")) {
+      return OPEN;
+    } else {
+      return CLOSE;
+    }
+  }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable buffer for the annotation of a sentence, holding the tokens,
+ * postags, postag ids, lemmas and probabilities in parallel arrays. The arrays
+ * only grow, so recycling one buffer across sentences tags and lemmatizes
+ * without allocating per token objects; {@link Morpheme} lists remain
+ * available through {@link #toMorphemes(MorphoFactory)} and the
+ * {@link MorphoTagger} and {@link Annotate} methods returning them.
+ *
+ * The arrays may be longer than the sentence: only the first {@link #size()}
+ * entries are valid. Instances are not thread safe.
+ *
+ * @author ragerri
+ * @version 2015-04-24
+ */
+public class TaggedSentence {
+
+  /**
+   * The tokens of the sentence.
+   */
+  private String[] tokens = new String[0];
+  /**
+   * The postags.
+   */
+  private String[] tags = new String[0];
+  /**
+   * The ids of the postags in the {@link TagAlphabet} of the model.
+   */
+  private int[] tagIds = new int[0];
+  /**
+   * The lemmas.
+   */
+  private String[] lemmas = new String[0];
+  /**
+   * The probabilities of the postags.
+   */
+  private double[] probs = new double[0];
+  /**
+   * The number of tokens.
+   */
+  private int size;
+
+  /**
+   * Create an empty buffer.
+   */
+  public TaggedSentence() {
+  }
+
+  /**
+   * Create a buffer holding a sentence.
+   *
+   * @param sentence
+   *          the tokens of the sentence
+   */
+  public TaggedSentence(final String[] sentence) {
+    setTokens(sentence);
+  }
+
+  /**
+   * Start a new sentence, clearing the annotations of the previous one. The
+   * token array is kept, not copied, and must not change while the sentence
+   * is annotated.
+   *
+   * @param sentence
+   *          the tokens of the sentence
+   */
+  public final void setTokens(final String[] sentence) {
+    this.size = sentence.length;
+    this.tokens = sentence;
+    if (this.tags.length < this.size) {
+      final int capacity = Math.max(this.size, this.tags.length * 2);
+      this.tags = new String[capacity];
+      this.tagIds = new int[capacity];
+      this.lemmas = new String[capacity];
+      this.probs = new double[capacity];
+    } else {
+      Arrays.fill(this.tags, 0, this.size, null);
+      Arrays.fill(this.lemmas, 0, this.size, null);
+    }
+    Arrays.fill(this.tagIds, 0, this.size, TagAlphabet.UNKNOWN);
+    Arrays.fill(this.probs, 0, this.size, 0.0);
+  }
+
+  /**
+   * Get the number of tokens of the sentence.
+   *
+   * @return the number of tokens
+   */
+  public final int size() {
+    return this.size;
+  }
+
+  /**
+   * Get the tokens of the sentence.
+   *
+   * @return the tokens, exactly {@link #size()} of them
+   */
+  public final String[] getTokens() {
+    return this.tokens;
+  }
+
+  /**
+   * Get the postag array, to be filled by the tagger.
+   *
+   * @return the postags, at least {@link #size()} of them
+   */
+  final String[] getTags() {
+    return this.tags;
+  }
+
+  /**
+   * Get the probability array, to be filled by the tagger.
+   *
+   * @return the probabilities, at least {@link #size()} of them
+   */
+  final double[] getProbs() {
+    return this.probs;
+  }
+
+  /**
+   * Get a token.
+   *
+   * @param index
+   *          the index of the token
+   * @return the token
+   */
+  public final String getToken(final int index) {
+    return this.tokens[index];
+  }
+
+  /**
+   * Get the postag of a token.
+   *
+   * @param index
+   *          the index of the token
+   * @return the postag
+   */
+  public final String getTag(final int index) {
+    return this.tags[index];
+  }
+
+  /**
+   * Get the id of the postag of a token.
+   *
+   * @param index
+   *          the index of the token
+   * @return the id or {@value TagAlphabet#UNKNOWN} if the postag is not a
+   *         postag of the model
+   */
+  public final int getTagId(final int index) {
+    return this.tagIds[index];
+  }
+
+  /**
+   * Set the postag of a token.
+   *
+   * @param index
+   *          the index of the token
+   * @param tag
+   *          the postag
+   * @param tagId
+   *          the id of the postag or {@value TagAlphabet#UNKNOWN}
+   */
+  public final void setTag(final int index, final String tag, final int tagId) {
+    this.tags[index] = tag;
+    this.tagIds[index] = tagId;
+  }
+
+  /**
+   * Get the lemma of a token.
+   *
+   * @param index
+   *          the index of the token
+   * @return the lemma or null if the token is not lemmatized
+   */
+  public final String getLemma(final int index) {
+    return this.lemmas[index];
+  }
+
+  /**
+   * Set the lemma of a token.
+   *
+   * @param index
+   *          the index of the token
+   * @param lemma
+   *          the lemma
+   */
+  public final void setLemma(final int index, final String lemma) {
+    this.lemmas[index] = lemma;
+  }
+
+  /**
+   * Get the probability of the postag of a token.
+   *
+   * @param index
+   *          the index of the token
+   * @return the probability
+   */
+  public final double getProb(final int index) {
+    return this.probs[index];
+  }
+
+  /**
+   * Create {@code Morpheme} objects from the annotations of the sentence.
+   *
+   * @param morphoFactory
+   *          the morpho factory
+   * @return a list of morpheme objects
+   */
+  public final List<Morpheme> toMorphemes(final MorphoFactory morphoFactory) {
+    final List<Morpheme> morphemes = new ArrayList<Morpheme>(this.size);
+    for (int i = 0; i < this.size; i++) {
+      final Morpheme morpheme;
+      if (this.tagIds[i] == TagAlphabet.UNKNOWN) {
+        morpheme = morphoFactory.createMorpheme(this.tokens[i], this.tags[i]);
+      } else {
+        morpheme = morphoFactory.createMorpheme(this.tokens[i], this.tags[i],
+            this.tagIds[i]);
+      }
+      morpheme.setLemma(this.lemmas[i]);
+      morphemes.add(morpheme);
+    }
+    return morphemes;
+  }
+
+}
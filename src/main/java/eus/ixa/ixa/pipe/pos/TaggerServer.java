@@ -0,0 +1,412 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.io.Files;
+
+/**
+ * Socket server for ixa-pipe-pos. The models and dictionaries are loaded once
+ * and every client connection sends one NAF document, terminated by the end
+ * of the stream or by a line containing {@value #END_OF_DOCUMENT}. The first
+ * line may be {@value #BEAM_SIZE} followed by the beam size to decode the
+ * document with, 1 for greedy decoding, overriding the beam size of the
+ * server up to the maxBeamSize property. The
+ * annotated document is sent back in NAF or CoNLL format and the connection
+ * is closed. Documents are tagged by a bounded pool of worker threads.
+ *
+ * If the document can not be annotated, or every worker is busy and the queue
+ * of waiting connections is full, the server replies with a single line
+ * starting with {@value #ERROR} followed by the reason. Clients that send
+ * nothing for {@value #READ_TIMEOUT} milliseconds are disconnected.
+ *
+ * Before every document the server checks whether the model file changed; if
+ * so, the new model is loaded through the {@link ModelRegistry} and used for
+ * the next documents, while the documents being tagged finish with the old
+ * one, so models can be rolled without restarting the server.
+ *
+ * @author ragerri
+ * @version 2015-04-15
+ */
+public class TaggerServer {
+
+  /**
+   * Marks the end of a document sent by the client.
+   */
+  public static final String END_OF_DOCUMENT = "<ENDOFDOCUMENT>";
+  /**
+   * Starts the optional first line setting the beam size of a document.
+   */
+  public static final String BEAM_SIZE = "<BEAMSIZE>";
+  /**
+   * Starts the reply of the server when the document is not annotated.
+   */
+  public static final String ERROR = "<ERROR>";
+  /**
+   * Milliseconds the server waits for the next line of a client.
+   */
+  public static final int READ_TIMEOUT = 60000;
+  /**
+   * Maximum number of connections waiting for a worker per worker thread.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 16;
+  /**
+   * The largest beam size clients can ask for if the maxBeamSize property is
+   * not set.
+   */
+  public static final String DEFAULT_MAX_BEAM_SIZE = "10";
+
+  /**
+   * The annotator shared by every connection.
+   */
+  private volatile Lease annotator;
+  /**
+   * The properties the annotator is created with.
+   */
+  private final Properties properties;
+  /**
+   * The model file.
+   */
+  private final String model;
+  /**
+   * The language of the annotator.
+   */
+  private final String lang;
+  /**
+   * The name of the model, used in the NAF linguistic processor header.
+   */
+  private final String modelName;
+  /**
+   * The version of ixa-pipe-pos, used in the NAF linguistic processor header.
+   */
+  private final String version;
+  /**
+   * If true output CoNLL tabulated format instead of NAF.
+   */
+  private final boolean noKaf;
+  /**
+   * The beam size of documents that do not set one.
+   */
+  private final int beamSize;
+  /**
+   * The largest beam size clients can ask for.
+   */
+  private final int maxBeamSize;
+  /**
+   * The port to listen to.
+   */
+  private final int port;
+  /**
+   * The pool of workers tagging the documents.
+   */
+  private final ExecutorService workers;
+
+  /**
+   * Construct a server loading the models and dictionaries specified in the
+   * properties object.
+   *
+   * @param properties
+   *          the annotation properties
+   * @param aPort
+   *          the port to listen to
+   * @param threads
+   *          the number of worker threads
+   * @param aVersion
+   *          the version of ixa-pipe-pos
+   * @throws IOException
+   *           if the models can not be loaded
+   */
+  public TaggerServer(final Properties properties, final int aPort,
+      final int threads, final String aVersion) throws IOException {
+    this.properties = properties;
+    this.model = properties.getProperty("model");
+    this.annotator = new Lease(new Annotate(properties));
+    this.lang = properties.getProperty("language");
+    this.modelName = Files.getNameWithoutExtension(properties
+        .getProperty("model"));
+    this.noKaf = Boolean.valueOf(properties.getProperty("nokaf"));
+    this.beamSize = Integer.parseInt(properties.getProperty("beamSize"));
+    this.maxBeamSize = Math.max(this.beamSize, Integer.parseInt(properties
+        .getProperty("maxBeamSize", DEFAULT_MAX_BEAM_SIZE)));
+    this.port = aPort;
+    this.version = aVersion;
+    this.workers = new ThreadPoolExecutor(threads, threads, 0L,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads
+            * QUEUE_SIZE_PER_THREAD), new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Listen to the port and serve clients until the process is killed.
+   *
+   * @throws IOException
+   *           if the port can not be opened
+   */
+  public final void serve() throws IOException {
+    final ServerSocket serverSocket = new ServerSocket(this.port, 50,
+        InetAddress.getLoopbackAddress());
+    System.err.println("-> Listening to port " + this.port);
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+        try {
+          this.workers.execute(new Runnable() {
+            @Override
+            public void run() {
+              handle(socket);
+            }
+          });
+        } catch (final RejectedExecutionException e) {
+          System.err.println("ERROR: server busy, rejecting "
+              + socket.getRemoteSocketAddress());
+          reject(socket, "server busy, try again later");
+        }
+      }
+    } finally {
+      this.workers.shutdown();
+      serverSocket.close();
+    }
+  }
+
+  /**
+   * Read a document from a client socket, annotate it and send it back.
+   *
+   * @param socket
+   *          the client socket
+   */
+  private void handle(final Socket socket) {
+    try {
+      socket.setSoTimeout(READ_TIMEOUT);
+      final BufferedReader breader = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), "UTF-8"));
+      final BufferedWriter bwriter = new BufferedWriter(new OutputStreamWriter(
+          socket.getOutputStream(), "UTF-8"));
+      final StringBuilder sb = new StringBuilder();
+      int beamSize = this.beamSize;
+      String line = breader.readLine();
+      if (line != null && line.startsWith(BEAM_SIZE)) {
+        beamSize = Integer.parseInt(line.substring(BEAM_SIZE.length()).trim());
+        if (beamSize < 1 || beamSize > this.maxBeamSize) {
+          throw new IllegalArgumentException("beam size must be between 1 and "
+              + this.maxBeamSize + ": " + beamSize);
+        }
+        line = breader.readLine();
+      }
+      while (line != null) {
+        if (line.contains(END_OF_DOCUMENT)) {
+          break;
+        }
+        sb.append(line).append("\n");
+        line = breader.readLine();
+      }
+      // annotate fully before replying so that a failure sends no partial
+      // document
+      final StringWriter annotated = new StringWriter();
+      annotate(sb.toString(), beamSize, annotated);
+      bwriter.write(annotated.toString());
+      bwriter.close();
+    } catch (final Exception e) {
+      System.err.println("ERROR: could not annotate document from "
+          + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+      reject(socket, "could not annotate document: " + e.getMessage());
+    } finally {
+      try {
+        socket.close();
+      } catch (final IOException e) {
+        System.err.println("ERROR: could not close client socket");
+      }
+    }
+  }
+
+  /**
+   * Send an error line to a client and close its socket.
+   *
+   * @param socket
+   *          the client socket
+   * @param reason
+   *          the reason the document is not annotated
+   */
+  private static void reject(final Socket socket, final String reason) {
+    try {
+      if (!socket.isClosed() && !socket.isOutputShutdown()) {
+        final Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+            "UTF-8");
+        writer.write(ERROR + " " + reason.replaceAll("[\\r\\n]+", " "));
+        writer.write("\n");
+        writer.flush();
+      }
+    } catch (final IOException e) {
+      System.err.println("ERROR: could not send error to client "
+          + socket.getRemoteSocketAddress());
+    } finally {
+      try {
+        socket.close();
+      } catch (final IOException e) {
+        System.err.println("ERROR: could not close client socket");
+      }
+    }
+  }
+
+  /**
+   * Annotate a NAF document.
+   *
+   * @param document
+   *          the NAF document
+   * @param aBeamSize
+   *          the beam size for decoding
+   * @param bwriter
+   *          the writer of the annotated document in NAF or CoNLL format
+   * @throws Exception
+   *           if the document is not valid NAF
+   */
+  private void annotate(final String document, final int aBeamSize,
+      final Writer bwriter) throws Exception {
+    final KAFDocument kaf = KAFDocument.createFromStream(new StringReader(
+        document));
+    if (kaf.getLang() == null) {
+      throw new IllegalArgumentException(
+          "the document has no language, expected " + this.lang);
+    }
+    if (!kaf.getLang().equalsIgnoreCase(this.lang)) {
+      throw new IllegalArgumentException("language of the document "
+          + kaf.getLang() + " does not match the server language " + this.lang);
+    }
+    final Lease lease = acquireAnnotator();
+    try {
+      if (this.noKaf) {
+        lease.annotate.annotatePOSToCoNLL(kaf, aBeamSize, bwriter);
+      } else {
+        final KAFDocument.LinguisticProcessor newLp = kaf
+            .addLinguisticProcessor("terms", "ixa-pipe-pos-" + this.modelName,
+                this.version);
+        newLp.setBeginTimestamp();
+        lease.annotate.annotatePOSToKAF(kaf, aBeamSize);
+        newLp.setEndTimestamp();
+        bwriter.write(kaf.toString());
+      }
+    } finally {
+      lease.release();
+    }
+  }
+
+  /**
+   * Get the current annotator, replacing it first if the model file changed.
+   * If the changed model or its annotator can not be loaded the current
+   * annotator is kept, the registry is reverted to its model and does not
+   * read the file again until it changes again, so the failure is reported
+   * once. The annotator must be released after annotating
+   * the document.
+   *
+   * @return the annotator
+   */
+  private Lease acquireAnnotator() {
+    try {
+      if (ModelRegistry.getInstance().reload(this.model)) {
+        System.err.println("-> Model " + this.model + " changed, reloading");
+        final Annotate annotate;
+        try {
+          annotate = new Annotate(this.properties);
+        } catch (final IOException e) {
+          ModelRegistry.getInstance().revert(this.model);
+          throw e;
+        } catch (final RuntimeException e) {
+          ModelRegistry.getInstance().revert(this.model);
+          throw e;
+        }
+        final Lease previous;
+        synchronized (this) {
+          previous = this.annotator;
+          this.annotator = new Lease(annotate);
+        }
+        // drop the reference of the server, the documents using it keep theirs
+        previous.release();
+      }
+    } catch (final IOException e) {
+      reloadFailed(e);
+    } catch (final RuntimeException e) {
+      reloadFailed(e);
+    }
+    while (true) {
+      final Lease lease = this.annotator;
+      if (lease.tryAcquire()) {
+        return lease;
+      }
+    }
+  }
+
+  private void reloadFailed(final Exception e) {
+    System.err.println("WARNING: could not reload model " + this.model
+        + ", keeping the current one: " + e.getMessage());
+  }
+
+  /**
+   * An annotator and the number of its users, the server and the documents
+   * being annotated with it. It is closed when the last user releases it.
+   */
+  private static final class Lease {
+
+    private final Annotate annotate;
+    private final AtomicInteger users = new AtomicInteger(1);
+
+    private Lease(final Annotate anAnnotate) {
+      this.annotate = anAnnotate;
+    }
+
+    /**
+     * Become a user of the annotator unless it is already closed.
+     *
+     * @return true if the annotator can be used
+     */
+    private boolean tryAcquire() {
+      while (true) {
+        final int current = this.users.get();
+        if (current == 0) {
+          return false;
+        }
+        if (this.users.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    private void release() {
+      if (this.users.decrementAndGet() == 0) {
+        this.annotate.close();
+      }
+    }
+  }
+
+}
@@ -37,9 +37,11 @@ import morfologik.stemming.WordData;
 public class MorfologikMorphoTagger implements DictionaryTagger {
 
   /**
-   * The Morfologik steamer to perform pos tagging with FSA dictionaries.
+   * The Morfologik steamer to perform pos tagging with FSA dictionaries. The
+   * {@link DictionaryLookup} reuses its buffers, so every thread gets its own
+   * lookup over the shared dictionary.
    */
-  private final IStemmer dictLookup;
+  private final ThreadLocal<IStemmer> dictLookup;
 
   /**
    * Reads a dictionary in morfologik FSA format.
@@ -53,7 +55,13 @@ public class MorfologikMorphoTagger implements DictionaryTagger {
    */
   public MorfologikMorphoTagger(final URL dictURL, final String aLang)
       throws IOException {
-    this.dictLookup = new DictionaryLookup(Dictionary.read(dictURL));
+    final Dictionary dictionary = Dictionary.read(dictURL);
+    this.dictLookup = new ThreadLocal<IStemmer>() {
+      @Override
+      protected IStemmer initialValue() {
+        return new DictionaryLookup(dictionary);
+      }
+    };
   }
 
   /**
@@ -65,7 +73,7 @@ public class MorfologikMorphoTagger implements DictionaryTagger {
    * @return the hashmap with the word as key and the postag as value
    */
   public String tag(final String word, final String posTag) {
-    final List<WordData> wdList = this.dictLookup.lookup(word.toLowerCase());
+    final List<WordData> wdList = this.dictLookup.get().lookup(word.toLowerCase());
     String newPosTag = null;
     for (final WordData wd : wdList) {
       newPosTag = wd.getTag().toString();
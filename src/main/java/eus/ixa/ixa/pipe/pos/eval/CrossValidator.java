@@ -15,31 +15,57 @@
  */
 package eus.ixa.ixa.pipe.pos.eval;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import opennlp.tools.cmdline.postag.POSEvaluationErrorListener;
 import opennlp.tools.cmdline.postag.POSTaggerFineGrainedReportListener;
+import opennlp.tools.postag.MutableTagDictionary;
+import opennlp.tools.postag.POSEvaluator;
+import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSSample;
-import opennlp.tools.postag.POSTaggerCrossValidator;
-import opennlp.tools.postag.POSTaggerEvaluationMonitor;
 import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.postag.TagDictionary;
 import opennlp.tools.postag.WordTagSampleStream;
 import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.ObjectStreamUtils;
 import opennlp.tools.util.TrainingParameters;
 import opennlp.tools.util.eval.EvaluationMonitor;
+import opennlp.tools.util.eval.Mean;
 import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
 import eus.ixa.ixa.pipe.pos.train.Flags;
+import eus.ixa.ixa.pipe.pos.train.HashedFactory;
 import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
 
 /**
  * Training POS tagger with Apache OpenNLP Machine Learning API via cross
  * validation.
  * 
+ * The training set is read once and partitioned into folds, every sample
+ * going to the fold of its index modulo the number of folds, and the folds
+ * are trained and evaluated concurrently, as many at a time as the
+ * FoldThreads parameter says. The results of the folds are merged in fold
+ * order, so the accuracy and the reports of the evaluation listeners do not
+ * depend on the order in which the folds finish. When folds may run
+ * concurrently, what the trainers print to the standard output is kept per
+ * fold and printed before the result of the fold, so the output is the same
+ * as that of a sequential cross validation.
+ * 
  * @author ragerri
- * @version 2014-11-25
+ * @version 2015-04-26
  */
 
 public class CrossValidator {
@@ -56,15 +82,30 @@ public class CrossValidator {
    * Cutoff value to create tag dictionary from training data.
    */
   private final int dictCutOff;
+  /**
+   * The tag dictionary.
+   */
+  private final String dictPath;
   /**
    * The folds value for cross validation.
    */
   private final int folds;
   /**
-   * posTaggerFactory features need to be implemented by any class extending
-   * this one.
+   * The number of folds trained and evaluated at the same time.
+   */
+  private final int foldThreads;
+  /**
+   * The beam size used to evaluate the folds.
    */
-  private POSTaggerFactory posTaggerFactory;
+  private final int beamSize;
+  /**
+   * The featureset.
+   */
+  private final String featureSet;
+  /**
+   * The number of hash bits of the hashed featureset.
+   */
+  private final int hashBits;
   /**
    * The evaluation listeners.
    */
@@ -88,17 +129,28 @@ public class CrossValidator {
         .readFileIntoMarkableStreamFactory(trainData);
     this.trainSamples = new WordTagSampleStream(trainStream);
     this.dictCutOff = Flags.getAutoDictFeatures(params);
+    this.dictPath = Flags.getDictionaryFeatures(params);
     this.folds = Flags.getFolds(params);
-    createPOSFactory(params);
+    this.foldThreads = Flags.getFoldThreads(params);
+    this.beamSize = Flags.getBeamsize(params);
+    this.featureSet = Flags.getFeatureSet(params);
+    this.hashBits = Flags.getHashBits(params);
     getEvalListeners(params);
   }
 
-  private void createPOSFactory(final TrainingParameters params) {
-    final String featureSet = Flags.getFeatureSet(params);
-    if (featureSet.equalsIgnoreCase("Opennlp")) {
-      this.posTaggerFactory = new POSTaggerFactory();
+  /**
+   * Create the POSTaggerFactory of a fold. Every fold gets its own factory
+   * because the tag dictionary is created from the training part of the fold.
+   * 
+   * @return the factory
+   */
+  private POSTaggerFactory createPOSFactory() {
+    if (this.featureSet.equalsIgnoreCase("Opennlp")) {
+      return new POSTaggerFactory();
+    } else if (this.featureSet.equalsIgnoreCase("Hashed")) {
+      return new HashedFactory(null, null, this.hashBits);
     } else {
-      this.posTaggerFactory = new BaselineFactory();
+      return new BaselineFactory();
     }
   }
 
@@ -117,17 +169,59 @@ public class CrossValidator {
    * 
    * @param params
    *          the training parameters
+   * @throws IOException
+   *           if the training set can not be read or a fold fails
    */
-  public final void crossValidate(final TrainingParameters params) {
+  public final void crossValidate(final TrainingParameters params)
+      throws IOException {
+    final int threads = Math.min(this.foldThreads, this.folds);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      crossValidate(params, executor, threads > 1);
+    } finally {
+      executor.shutdown();
+    }
+  }
 
-    POSTaggerCrossValidator validator = null;
+  /**
+   * Cross validate when no separate testset is available, training and
+   * evaluating the folds in the given executor.
+   * 
+   * @param params
+   *          the training parameters
+   * @param executor
+   *          the executor running the folds
+   * @throws IOException
+   *           if the training set can not be read or a fold fails; the folds
+   *           not finished yet are cancelled
+   */
+  public final void crossValidate(final TrainingParameters params,
+      final ExecutorService executor) throws IOException {
+    crossValidate(params, executor, true);
+  }
+
+  /**
+   * Cross validate in the given executor.
+   * 
+   * @param params
+   *          the training parameters
+   * @param executor
+   *          the executor running the folds
+   * @param keepTrainingOutput
+   *          whether to keep the standard output of every fold and print it
+   *          with its result
+   * @throws IOException
+   *           if the training set can not be read or a fold fails
+   */
+  private void crossValidate(final TrainingParameters params,
+      final ExecutorService executor, final boolean keepTrainingOutput)
+      throws IOException {
+    final List<POSSample> samples = new ArrayList<POSSample>();
     try {
-      validator = getPOSTaggerCrossValidator(params);
-      validator.evaluate(this.trainSamples, this.folds);
-    } catch (final IOException e) {
-      System.err.println("IO error while loading training set!");
-      e.printStackTrace();
-      System.exit(1);
+      POSSample sample;
+      while ((sample = this.trainSamples.read()) != null) {
+        samples.add(sample);
+      }
     } finally {
       try {
         this.trainSamples.close();
@@ -135,56 +229,208 @@ public class CrossValidator {
         System.err.println("IO error with the train samples!");
       }
     }
-    if (this.detailedListener == null) {
-      System.out.println(validator.getWordAccuracy());
-    } else {
-      // TODO add detailed evaluation here
-      System.out.println(validator.getWordAccuracy());
+    final PrintStream stdout = System.out;
+    final FoldOutput foldOutput = keepTrainingOutput ? new FoldOutput(stdout)
+        : null;
+    final ByteArrayOutputStream[] trainingOutputs = new ByteArrayOutputStream[this.folds];
+    final List<EvaluationRecorder> foldResults;
+    if (foldOutput != null) {
+      System.setOut(new PrintStream(foldOutput, true));
     }
+    try {
+      final List<Future<EvaluationRecorder>> results = new ArrayList<Future<EvaluationRecorder>>(
+          this.folds);
+      for (int fold = 0; fold < this.folds; fold++) {
+        final int partition = fold;
+        results.add(executor.submit(new Callable<EvaluationRecorder>() {
+          public EvaluationRecorder call() throws IOException {
+            if (foldOutput == null) {
+              return evaluateFold(params, samples, partition);
+            }
+            trainingOutputs[partition] = foldOutput.capture();
+            try {
+              return evaluateFold(params, samples, partition);
+            } finally {
+              foldOutput.release();
+            }
+          }
+        }));
+      }
+      foldResults = getResults(results);
+    } finally {
+      if (foldOutput != null) {
+        System.setOut(stdout);
+      }
+    }
+    final Mean wordAccuracy = new Mean();
+    for (int fold = 0; fold < this.folds; fold++) {
+      final EvaluationRecorder result = foldResults.get(fold);
+      if (trainingOutputs[fold] != null) {
+        trainingOutputs[fold].writeTo(System.out);
+        System.out.flush();
+      }
+      System.out.println("Fold " + (fold + 1) + ": "
+          + result.getWordAccuracy());
+      wordAccuracy.add(result.getWordAccuracy(), result.getWordCount());
+      result.replay(this.listeners);
+    }
+    if (this.detailedListener != null) {
+      this.detailedListener.writeReport();
+    }
+    System.out.println(wordAccuracy.mean());
   }
 
   /**
-   * Get the postagger cross validator.
+   * Wait for the results of the folds, cancelling the folds not finished yet
+   * if one of them fails.
+   * 
+   * @param results
+   *          the results of the folds
+   * @return the evaluation of every fold
+   * @throws IOException
+   *           if a fold failed or the cross validation was interrupted
+   */
+  private static List<EvaluationRecorder> getResults(
+      final List<Future<EvaluationRecorder>> results) throws IOException {
+    final List<EvaluationRecorder> foldResults = new ArrayList<EvaluationRecorder>(
+        results.size());
+    try {
+      for (int fold = 0; fold < results.size(); fold++) {
+        try {
+          foldResults.add(results.get(fold).get());
+        } catch (final ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IOException("Error while cross validating fold "
+              + (fold + 1) + ": " + cause.getMessage(), cause);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Cross validation interrupted!");
+    } finally {
+      if (foldResults.size() < results.size()) {
+        for (final Future<EvaluationRecorder> result : results) {
+          result.cancel(true);
+        }
+      }
+    }
+    return foldResults;
+  }
+
+  /**
+   * Train a model on every sample not in a fold and evaluate it on the
+   * samples of the fold.
    * 
    * @param params
    *          the training parameters
-   * @return the pos tagger cross validator
-   */
-  private POSTaggerCrossValidator getPOSTaggerCrossValidator(
-      final TrainingParameters params) {
-    final File dictPath = new File(Flags.getDictionaryFeatures(params));
-    // features
-    if (this.posTaggerFactory == null) {
-      throw new IllegalStateException(
-          "You must create the POSTaggerFactory features!");
-    }
-    POSTaggerCrossValidator validator = null;
-    if (dictPath.getName().equals(Flags.DEFAULT_DICT_PATH)) {
-      if (this.dictCutOff == Flags.DEFAULT_DICT_CUTOFF) {
-        validator = new POSTaggerCrossValidator(this.lang, params, null, null,
-            null, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+   * @param samples
+   *          the training set
+   * @param fold
+   *          the fold
+   * @return the result of the evaluation
+   * @throws IOException
+   *           if the tag dictionary can not be read
+   */
+  private EvaluationRecorder evaluateFold(final TrainingParameters params,
+      final List<POSSample> samples, final int fold) throws IOException {
+    final List<POSSample> trainFold = new ArrayList<POSSample>();
+    final List<POSSample> testFold = new ArrayList<POSSample>();
+    for (int i = 0; i < samples.size(); i++) {
+      if (i % this.folds == fold) {
+        testFold.add(samples.get(i));
       } else {
-        validator = new POSTaggerCrossValidator(this.lang, params, null, null,
-            this.dictCutOff, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+        trainFold.add(samples.get(i));
       }
-    } else {
-      if (this.dictCutOff == Flags.DEFAULT_DICT_CUTOFF) {
-        validator = new POSTaggerCrossValidator(this.lang, params, dictPath,
-            null, null, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+    }
+    final POSTaggerFactory posTaggerFactory = createPOSFactory();
+    if (!this.dictPath.equalsIgnoreCase(Flags.DEFAULT_DICT_PATH)) {
+      posTaggerFactory.setTagDictionary(posTaggerFactory
+          .createTagDictionary(new File(this.dictPath)));
+    }
+    if (this.dictCutOff != Flags.DEFAULT_DICT_CUTOFF) {
+      TagDictionary dict = posTaggerFactory.getTagDictionary();
+      if (dict == null) {
+        dict = posTaggerFactory.createEmptyTagDictionary();
+        posTaggerFactory.setTagDictionary(dict);
+      }
+      if (dict instanceof MutableTagDictionary) {
+        POSTaggerME.populatePOSDictionary(
+            ObjectStreamUtils.createObjectStream(trainFold),
+            (MutableTagDictionary) dict, this.dictCutOff);
       } else {
-        validator = new POSTaggerCrossValidator(this.lang, params, dictPath,
-            null, this.dictCutOff, this.posTaggerFactory.getClass().getName(),
-            this.listeners
-                .toArray(new POSTaggerEvaluationMonitor[this.listeners.size()]));
+        throw new IllegalArgumentException("Can't extend a POSDictionary"
+            + " that does not implement MutableTagDictionary.");
       }
     }
-    return validator;
+    final POSModel model = POSTaggerME.train(this.lang,
+        ObjectStreamUtils.createObjectStream(trainFold), params,
+        posTaggerFactory);
+    final EvaluationRecorder result = new EvaluationRecorder(
+        !this.listeners.isEmpty());
+    final POSEvaluator evaluator = new POSEvaluator(new POSTaggerME(model,
+        this.beamSize, this.beamSize), result);
+    evaluator.evaluate(ObjectStreamUtils.createObjectStream(testFold));
+    result.setWordAccuracy(evaluator.getWordAccuracy(),
+        evaluator.getWordCount());
+    return result;
+  }
+
+  /**
+   * The standard output while the folds run: what a fold thread prints is
+   * kept in the buffer of the fold, everything else goes to the standard
+   * output.
+   */
+  private static final class FoldOutput extends OutputStream {
+
+    private final OutputStream stdout;
+    private final ThreadLocal<ByteArrayOutputStream> buffer = new ThreadLocal<ByteArrayOutputStream>();
+
+    private FoldOutput(final OutputStream aStdout) {
+      this.stdout = aStdout;
+    }
+
+    /**
+     * Keep what the current thread prints until {@link #release()}.
+     * 
+     * @return the buffer of the current thread
+     */
+    private ByteArrayOutputStream capture() {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      this.buffer.set(output);
+      return output;
+    }
+
+    private void release() {
+      this.buffer.remove();
+    }
+
+    private OutputStream target() {
+      final ByteArrayOutputStream output = this.buffer.get();
+      return output == null ? this.stdout : output;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      target().write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+        throws IOException {
+      target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      target().flush();
+    }
   }
 
 }
@@ -16,11 +16,17 @@
 
 package eus.ixa.ixa.pipe.pos.eval;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import opennlp.tools.cmdline.postag.POSEvaluationErrorListener;
 import opennlp.tools.cmdline.postag.POSTaggerFineGrainedReportListener;
@@ -32,14 +38,23 @@ import opennlp.tools.postag.POSTaggerEvaluationMonitor;
 import opennlp.tools.postag.POSTaggerME;
 import opennlp.tools.postag.WordTagSampleStream;
 import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.ObjectStreamUtils;
 import opennlp.tools.util.eval.EvaluationMonitor;
+import opennlp.tools.util.eval.Mean;
+import eus.ixa.ixa.pipe.pos.MappedPOSModel;
 import eus.ixa.ixa.pipe.pos.train.InputOutputUtils;
 
 /**
  * Evaluation class mostly inspired by {@link POSEvaluator}.
  * 
+ * With more than one thread the test set is split into as many shards of
+ * consecutive samples, every shard is tagged by its own {@link POSTaggerME}
+ * sharing the loaded model, and the results of the shards are merged in
+ * corpus order, so the accuracy and the reports are those of a single
+ * threaded evaluation.
+ * 
  * @author ragerri
- * @version 2014-07-08
+ * @version 2015-04-26
  */
 public class Evaluate {
 
@@ -55,6 +70,14 @@ public class Evaluate {
    * An instance of the probabilistic {@link POSTaggerME}.
    */
   private final POSTaggerME posTagger;
+  /**
+   * The beam size for decoding.
+   */
+  private final int beamSize;
+  /**
+   * The number of threads evaluating the test set.
+   */
+  private final int threads;
 
   /**
    * Construct an evaluator. The features are encoded in the model itself.
@@ -70,29 +93,40 @@ public class Evaluate {
    */
   public Evaluate(final String testData, final String model,
       final String beamsize) throws IOException {
+    this(testData, model, beamsize, 1);
+  }
+
+  /**
+   * Construct an evaluator tagging the test set with several threads. The
+   * features are encoded in the model itself.
+   * 
+   * @param testData
+   *          the reference data to evaluate against
+   * @param model
+   *          the model to be evaluated
+   * @param beamsize
+   *          the beam size for decoding
+   * @param aThreads
+   *          the number of threads
+   * @throws IOException
+   *           if input data not available
+   */
+  public Evaluate(final String testData, final String model,
+      final String beamsize, final int aThreads) throws IOException {
 
     final ObjectStream<String> testStream = InputOutputUtils
         .readFileIntoMarkableStreamFactory(testData);
     this.testSamples = new WordTagSampleStream(testStream);
-    InputStream trainedModelInputStream = null;
     try {
       if (posModel == null) {
-        trainedModelInputStream = new FileInputStream(model);
-        posModel = new POSModel(trainedModelInputStream);
+        posModel = MappedPOSModel.read(new File(model));
       }
     } catch (final IOException e) {
       e.printStackTrace();
-    } finally {
-      if (trainedModelInputStream != null) {
-        try {
-          trainedModelInputStream.close();
-        } catch (final IOException e) {
-          System.err.println("Could not load model!");
-        }
-      }
     }
-    this.posTagger = new POSTaggerME(posModel, Integer.parseInt(beamsize),
-        Integer.parseInt(beamsize));
+    this.beamSize = Integer.parseInt(beamsize);
+    this.threads = aThreads;
+    this.posTagger = new POSTaggerME(posModel, this.beamSize, this.beamSize);
   }
 
   /**
@@ -102,9 +136,8 @@ public class Evaluate {
    *           if test corpus not loaded
    */
   public final void evaluate() throws IOException {
-    final POSEvaluator evaluator = new POSEvaluator(this.posTagger);
-    evaluator.evaluate(this.testSamples);
-    System.out.println(evaluator.getWordAccuracy());
+    final List<EvaluationMonitor<POSSample>> listeners = new LinkedList<EvaluationMonitor<POSSample>>();
+    System.out.println(evaluate(listeners));
   }
 
   /**
@@ -118,9 +151,7 @@ public class Evaluate {
     final POSTaggerFineGrainedReportListener detailedFListener = new POSTaggerFineGrainedReportListener(
         System.out);
     listeners.add(detailedFListener);
-    final POSEvaluator evaluator = new POSEvaluator(this.posTagger,
-        listeners.toArray(new POSTaggerEvaluationMonitor[listeners.size()]));
-    evaluator.evaluate(this.testSamples);
+    evaluate(listeners);
     detailedFListener.writeReport();
   }
 
@@ -133,10 +164,106 @@ public class Evaluate {
   public final void evalError() throws IOException {
     final List<EvaluationMonitor<POSSample>> listeners = new LinkedList<EvaluationMonitor<POSSample>>();
     listeners.add(new POSEvaluationErrorListener());
-    final POSEvaluator evaluator = new POSEvaluator(this.posTagger,
-        listeners.toArray(new POSTaggerEvaluationMonitor[listeners.size()]));
-    evaluator.evaluate(this.testSamples);
-    System.out.println(evaluator.getWordAccuracy());
+    System.out.println(evaluate(listeners));
+  }
+
+  /**
+   * Evaluate the test set, in parallel if there is more than one thread.
+   * 
+   * @param listeners
+   *          the evaluation listeners
+   * @return the word accuracy
+   * @throws IOException
+   *           if test corpus not loaded
+   */
+  final double evaluate(final List<EvaluationMonitor<POSSample>> listeners)
+      throws IOException {
+    if (this.threads <= 1) {
+      final POSEvaluator evaluator = new POSEvaluator(this.posTagger,
+          listeners.toArray(new POSTaggerEvaluationMonitor[listeners.size()]));
+      evaluator.evaluate(this.testSamples);
+      return evaluator.getWordAccuracy();
+    }
+    final List<POSSample> samples = new ArrayList<POSSample>();
+    POSSample sample;
+    while ((sample = this.testSamples.read()) != null) {
+      samples.add(sample);
+    }
+    final int shardSize = (samples.size() + this.threads - 1) / this.threads;
+    final ExecutorService executor = Executors
+        .newFixedThreadPool(this.threads);
+    final List<Future<EvaluationRecorder>> results = new ArrayList<Future<EvaluationRecorder>>();
+    try {
+      for (int start = 0; start < samples.size(); start += shardSize) {
+        final List<POSSample> shard = samples.subList(start,
+            Math.min(start + shardSize, samples.size()));
+        results.add(executor.submit(new Callable<EvaluationRecorder>() {
+          public EvaluationRecorder call() throws IOException {
+            return evaluateShard(shard, !listeners.isEmpty());
+          }
+        }));
+      }
+      final Mean wordAccuracy = new Mean();
+      for (final Future<EvaluationRecorder> future : results) {
+        final EvaluationRecorder result = getResult(future);
+        wordAccuracy.add(result.getWordAccuracy(), result.getWordCount());
+        result.replay(listeners);
+      }
+      return wordAccuracy.mean();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Evaluate a shard of the test set with its own tagger.
+   * 
+   * @param shard
+   *          the samples of the shard
+   * @param record
+   *          whether to keep the classified samples for the listeners
+   * @return the result of the evaluation
+   * @throws IOException
+   *           if the samples can not be read
+   */
+  private EvaluationRecorder evaluateShard(final List<POSSample> shard,
+      final boolean record) throws IOException {
+    final EvaluationRecorder result = new EvaluationRecorder(record);
+    final POSEvaluator evaluator = new POSEvaluator(new POSTaggerME(posModel,
+        this.beamSize, this.beamSize), result);
+    evaluator.evaluate(ObjectStreamUtils.createObjectStream(shard));
+    result.setWordAccuracy(evaluator.getWordAccuracy(),
+        evaluator.getWordCount());
+    return result;
+  }
+
+  /**
+   * Wait for the evaluation of a shard.
+   * 
+   * @param future
+   *          the evaluation
+   * @return the result of the evaluation
+   * @throws IOException
+   *           if the evaluation failed or was interrupted
+   */
+  private static EvaluationRecorder getResult(
+      final Future<EvaluationRecorder> future) throws IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Evaluation interrupted!");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
   }
 
 }
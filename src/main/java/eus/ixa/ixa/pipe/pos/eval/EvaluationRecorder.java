@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.postag.POSTaggerEvaluationMonitor;
+import opennlp.tools.util.eval.EvaluationMonitor;
+
+/**
+ * The evaluation of a part of a test set, e.g., a cross validation fold or a
+ * shard evaluated in its own thread: its word accuracy and, if requested, the
+ * samples it classified, to be passed to the evaluation listeners in the
+ * order of the parts once every part is evaluated.
+ * 
+ * @author ragerri
+ * @version 2015-04-26
+ */
+final class EvaluationRecorder implements POSTaggerEvaluationMonitor {
+
+  /**
+   * Whether to keep the classified samples.
+   */
+  private final boolean record;
+  /**
+   * The reference samples.
+   */
+  private final List<POSSample> references = new ArrayList<POSSample>();
+  /**
+   * The predicted samples.
+   */
+  private final List<POSSample> predictions = new ArrayList<POSSample>();
+  /**
+   * Whether every sample was correctly classified.
+   */
+  private final List<Boolean> correct = new ArrayList<Boolean>();
+  /**
+   * The word accuracy.
+   */
+  private double wordAccuracy;
+  /**
+   * The number of words evaluated.
+   */
+  private long wordCount;
+
+  /**
+   * Create a recorder.
+   * 
+   * @param aRecord
+   *          whether to keep the classified samples for the listeners
+   */
+  EvaluationRecorder(final boolean aRecord) {
+    this.record = aRecord;
+  }
+
+  public void correctlyClassified(final POSSample reference,
+      final POSSample prediction) {
+    add(reference, prediction, true);
+  }
+
+  public void missclassified(final POSSample reference,
+      final POSSample prediction) {
+    add(reference, prediction, false);
+  }
+
+  private void add(final POSSample reference, final POSSample prediction,
+      final boolean isCorrect) {
+    if (this.record) {
+      this.references.add(reference);
+      this.predictions.add(prediction);
+      this.correct.add(isCorrect);
+    }
+  }
+
+  /**
+   * Set the result of the evaluation.
+   * 
+   * @param aWordAccuracy
+   *          the word accuracy
+   * @param aWordCount
+   *          the number of words evaluated
+   */
+  void setWordAccuracy(final double aWordAccuracy, final long aWordCount) {
+    this.wordAccuracy = aWordAccuracy;
+    this.wordCount = aWordCount;
+  }
+
+  /**
+   * Get the word accuracy.
+   * 
+   * @return the word accuracy
+   */
+  double getWordAccuracy() {
+    return this.wordAccuracy;
+  }
+
+  /**
+   * Get the number of words evaluated.
+   * 
+   * @return the number of words
+   */
+  long getWordCount() {
+    return this.wordCount;
+  }
+
+  /**
+   * Pass the classified samples to the listeners, in the order they were
+   * classified.
+   * 
+   * @param listeners
+   *          the evaluation listeners
+   */
+  void replay(final List<EvaluationMonitor<POSSample>> listeners) {
+    for (int i = 0; i < this.references.size(); i++) {
+      for (final EvaluationMonitor<POSSample> listener : listeners) {
+        if (this.correct.get(i)) {
+          listener.correctlyClassified(this.references.get(i),
+              this.predictions.get(i));
+        } else {
+          listener.missclassified(this.references.get(i),
+              this.predictions.get(i));
+        }
+      }
+    }
+  }
+
+}
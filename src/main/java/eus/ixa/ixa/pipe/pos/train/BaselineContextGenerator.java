@@ -15,9 +15,8 @@
  */
 package eus.ixa.ixa.pipe.pos.train;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.postag.POSContextGenerator;
@@ -30,6 +29,23 @@ import opennlp.tools.util.StringList;
  * {@code @DefaultPOSContextGenerator}. These extra features require at least
  * 2GB memory to train, more if training data is large.
  * 
+ * The features are built into an array of the exact size with a reused
+ * {@code StringBuilder}, and the shape features are found by scanning the
+ * characters of the word, so instances are not thread safe; every tagger and
+ * trainer creates its own through the factory.
+ * 
+ * The features that do not depend on the previous tags are computed once per
+ * token of a sentence and every hypothesis of the beam only adds the features
+ * of its previous tags. A new sentence is recognized by a new token array or
+ * by a change of the words around a token, so token arrays may be reused;
+ * taggers call {@link #startSentence()} before every sentence anyway.
+ * 
+ * With a hash space, e.g., through the {@link HashedFactory}, every feature
+ * is hashed into one of 2^bits ids as it is built and the context holds the
+ * ids instead of the feature strings. The feature strings are then never
+ * created, the model has at most one predicate per id and the predicates are
+ * short strings shared by every generator.
+ * 
  * @author ragerri
  * @version 2014-07-08
  */
@@ -52,13 +68,10 @@ public class BaselineContextGenerator implements POSContextGenerator {
    */
   private static final int SUFFIX_LENGTH = 4;
   /**
-   * Has capital regexp.
-   */
-  private static Pattern hasCap = Pattern.compile("[A-Z]");
-  /**
-   * Has number regexp.
+   * The predicate of every hashed feature id, by number of hash bits, filled
+   * as the ids are used.
    */
-  private static Pattern hasNum = Pattern.compile("[0-9]");
+  private static final ConcurrentHashMap<Integer, String[]> hashedPredicates = new ConcurrentHashMap<Integer, String[]>();
   /**
    * The context Cache.
    */
@@ -67,6 +80,17 @@ public class BaselineContextGenerator implements POSContextGenerator {
    * The words key.
    */
   private Object wordsKey;
+  /**
+   * The features of every token of the current sentence that do not depend
+   * on the previous tags, computed once per sentence and shared by every
+   * hypothesis of the beam.
+   */
+  private String[][] tokenContexts = new String[0][];
+  /**
+   * The words each token context was computed from: the word, the previous
+   * word, the word before it, the next word and the word after it.
+   */
+  private String[] tokenWindows = new String[0];
   /**
    * The tag dictionary.
    */
@@ -75,6 +99,15 @@ public class BaselineContextGenerator implements POSContextGenerator {
    * The dictionary ngrams.
    */
   private final String[] dictGram;
+  /**
+   * The buffer the features are built in.
+   */
+  private final StringBuilder featureBuilder = new StringBuilder();
+  /**
+   * The predicates of the hashed feature ids, null if features are not
+   * hashed.
+   */
+  private final String[] hashedIds;
 
   /**
    * Initializes the current instance.
@@ -95,11 +128,65 @@ public class BaselineContextGenerator implements POSContextGenerator {
    *          the dictionary
    */
   public BaselineContextGenerator(final int cacheSize, final Dictionary aDict) {
+    this(cacheSize, aDict, 0);
+  }
+
+  /**
+   * Initializes the current instance hashing the features.
+   * 
+   * @param cacheSize
+   *          the cache size
+   * @param aDict
+   *          the dictionary
+   * @param hashBits
+   *          the number of bits of the hashed feature ids, at most
+   *          {@link Flags#MAX_HASH_BITS}, or 0 to use the feature strings
+   */
+  public BaselineContextGenerator(final int cacheSize, final Dictionary aDict,
+      final int hashBits) {
     this.dict = aDict;
     this.dictGram = new String[1];
     if (cacheSize > 0) {
       this.contextsCache = new Cache(cacheSize);
     }
+    if (hashBits < 0 || hashBits > Flags.MAX_HASH_BITS) {
+      throw new IllegalArgumentException("Hash bits must be between 0 and "
+          + Flags.MAX_HASH_BITS + ": " + hashBits);
+    }
+    this.hashedIds = hashBits > 0 ? getHashedPredicates(hashBits) : null;
+  }
+
+  /**
+   * Get the table of the predicates of the hashed feature ids shared by every
+   * generator with the same number of hash bits.
+   * 
+   * @param hashBits
+   *          the number of hash bits
+   * @return the predicate table
+   */
+  private static String[] getHashedPredicates(final int hashBits) {
+    String[] predicates = hashedPredicates.get(hashBits);
+    if (predicates == null) {
+      predicates = new String[1 << hashBits];
+      final String[] previous = hashedPredicates.putIfAbsent(hashBits,
+          predicates);
+      if (previous != null) {
+        predicates = previous;
+      }
+    }
+    return predicates;
+  }
+
+  /**
+   * Forget the features of the previous sentence. Taggers call this before
+   * tagging every sentence.
+   */
+  public final void startSentence() {
+    this.wordsKey = null;
+    if (this.contextsCache != null) {
+      this.contextsCache.clear();
+    }
+    Arrays.fill(this.tokenContexts, null);
   }
 
   /**
@@ -190,79 +277,294 @@ public class BaselineContextGenerator implements POSContextGenerator {
       prev = this.SB; // Sentence Beginning
     }
     final String cacheKey = index + tagprev + tagprevprev;
+    if (this.wordsKey != tokens
+        || !isWindow(index, lex, prev, prevprev, next, nextnext)) {
+      if (this.contextsCache != null) {
+        this.contextsCache.clear();
+      }
+      this.wordsKey = tokens;
+      if (this.tokenContexts.length < tokens.length) {
+        final int capacity = Math.max(tokens.length,
+            this.tokenContexts.length * 2);
+        this.tokenContexts = new String[capacity][];
+        this.tokenWindows = new String[capacity * 5];
+      } else {
+        Arrays.fill(this.tokenContexts, 0, tokens.length, null);
+      }
+    } else if (this.contextsCache != null) {
+      final String[] cachedContexts = (String[]) this.contextsCache
+          .get(cacheKey);
+      if (cachedContexts != null) {
+        return cachedContexts;
+      }
+    }
+    String[] tokenContext = this.tokenContexts[index];
+    if (tokenContext == null) {
+      tokenContext = getTokenContext(lex, prev, prevprev, next, nextnext);
+      this.tokenContexts[index] = tokenContext;
+      final int window = index * 5;
+      this.tokenWindows[window] = lex;
+      this.tokenWindows[window + 1] = prev;
+      this.tokenWindows[window + 2] = prevprev;
+      this.tokenWindows[window + 3] = next;
+      this.tokenWindows[window + 4] = nextnext;
+    }
+    // the features of the previous words and the next words go last
+    final int numPrevious = prev != null && prevprev != null ? 1 : 0;
+    final int numNext = next == null ? 0 : nextnext != null ? 2 : 1;
+    final int numWord = tokenContext.length - numPrevious - numNext;
+    final boolean prevTag = prev != null && tagprev != null;
+    final boolean prevPrevTag = numPrevious > 0 && tagprevprev != null;
+    final String[] contexts;
+    if (!prevTag && !prevPrevTag) {
+      contexts = tokenContext;
+    } else {
+      contexts = new String[tokenContext.length + (prevTag ? 2 : 0)
+          + (prevPrevTag ? 1 : 0)];
+      System.arraycopy(tokenContext, 0, contexts, 0, numWord);
+      int f = numWord;
+      if (prevTag) {
+        contexts[f++] = feature("pt=", tagprev);
+        // bigram tag-1, w
+        contexts[f++] = feature("pt,w=", tagprev, lex);
+      }
+      if (numPrevious > 0) {
+        contexts[f++] = tokenContext[numWord];
+        if (prevPrevTag) {
+          // bigram tag-2,tag-1
+          contexts[f++] = feature("pt2,pt1=", tagprevprev, tagprev);
+        }
+      }
+      System.arraycopy(tokenContext, numWord + numPrevious, contexts, f,
+          numNext);
+    }
     if (this.contextsCache != null) {
-      if (this.wordsKey == tokens) {
-        final String[] cachedContexts = (String[]) this.contextsCache
-            .get(cacheKey);
-        if (cachedContexts != null) {
-          return cachedContexts;
+      this.contextsCache.put(cacheKey, contexts);
+    }
+    return contexts;
+  }
+
+  /**
+   * Check whether the features of a token, if computed, were computed from the
+   * same words, so that they and the cached contexts of the token are valid.
+   * 
+   * @param index
+   *          the token
+   * @param lex
+   *          the word
+   * @param prev
+   *          the previous word
+   * @param prevprev
+   *          the word before the previous word
+   * @param next
+   *          the next word
+   * @param nextnext
+   *          the word after the next word
+   * @return false if the features of the token were computed from other words
+   */
+  private boolean isWindow(final int index, final String lex,
+      final String prev, final String prevprev, final String next,
+      final String nextnext) {
+    if (index >= this.tokenContexts.length
+        || this.tokenContexts[index] == null) {
+      return true;
+    }
+    final int window = index * 5;
+    return same(this.tokenWindows[window], lex)
+        && same(this.tokenWindows[window + 1], prev)
+        && same(this.tokenWindows[window + 2], prevprev)
+        && same(this.tokenWindows[window + 3], next)
+        && same(this.tokenWindows[window + 4], nextnext);
+  }
+
+  private static boolean same(final String a, final String b) {
+    return a == b || a != null && a.equals(b);
+  }
+
+  /**
+   * Get the features of a token that do not depend on the previous tags, in
+   * context order: the features of the word, those of the previous words and
+   * those of the next words. The features of the previous tags are inserted
+   * before those of the previous word and of the word before it.
+   * 
+   * @param lex
+   *          the word
+   * @param prev
+   *          the previous word
+   * @param prevprev
+   *          the word before the previous word
+   * @param next
+   *          the next word
+   * @param nextnext
+   *          the word after the next word
+   * @return the features
+   */
+  private String[] getTokenContext(final String lex, final String prev,
+      final String prevprev, final String next, final String nextnext) {
+    this.dictGram[0] = lex;
+    final boolean inDict = this.dict != null
+        && this.dict.contains(new StringList(this.dictGram));
+    boolean hyphen = false;
+    boolean cap = false;
+    boolean num = false;
+    if (!inDict) {
+      for (int i = 0; i < lex.length(); i++) {
+        final char c = lex.charAt(i);
+        if (c == '-') {
+          hyphen = true;
+        } else if (c >= 'A' && c <= 'Z') {
+          cap = true;
+        } else if (c >= '0' && c <= '9') {
+          num = true;
         }
-      } else {
-        this.contextsCache.clear();
-        this.wordsKey = tokens;
       }
     }
-    final List<String> featureList = new ArrayList<String>();
-    featureList.add("default");
+    // size the context exactly instead of growing a list
+    int numFeatures = 2;
+    if (!inDict) {
+      numFeatures += SUFFIX_LENGTH + PREFIX_LENGTH + (hyphen ? 1 : 0)
+          + (cap ? 1 : 0) + (num ? 1 : 0);
+    }
+    if (prev != null) {
+      numFeatures += prevprev != null ? 3 : 2;
+    }
+    if (next != null) {
+      numFeatures += nextnext != null ? 2 : 1;
+    }
+    final String[] contexts = new String[numFeatures];
+    int f = 0;
+    contexts[f++] = constant("default");
     // add the word itself
-    featureList.add("w=" + lex);
-    this.dictGram[0] = lex;
-    if (this.dict == null || !this.dict.contains(new StringList(this.dictGram))) {
+    contexts[f++] = feature("w=", lex);
+    if (!inDict) {
       // do some basic suffix analysis
-      final String[] suffs = getSuffixes(lex);
-      for (final String suff : suffs) {
-        featureList.add("suf=" + suff);
+      final int length = lex.length();
+      for (int li = 0; li < SUFFIX_LENGTH; li++) {
+        contexts[f++] = feature("suf=", lex, Math.max(length - li - 1, 0),
+            length);
       }
-
-      final String[] prefs = getPrefixes(lex);
-      for (final String pref : prefs) {
-        featureList.add("pre=" + pref);
+      for (int li = 0; li < PREFIX_LENGTH; li++) {
+        contexts[f++] = feature("pre=", lex, 0, Math.min(li + 1, length));
       }
       // see if the word has any special characters
-      if (lex.indexOf('-') != -1) {
-        featureList.add("h");
+      if (hyphen) {
+        contexts[f++] = constant("h");
       }
-
-      if (hasCap.matcher(lex).find()) {
-        featureList.add("c");
+      if (cap) {
+        contexts[f++] = constant("c");
       }
-
-      if (hasNum.matcher(lex).find()) {
-        featureList.add("d");
+      if (num) {
+        contexts[f++] = constant("d");
       }
     }
-    // add the words and pos's of the surrounding context
+    // add the surrounding words
     if (prev != null) {
-      featureList.add("pw=" + prev);
+      contexts[f++] = feature("pw=", prev);
       // bigram w-1,w
-      featureList.add("pw,w=" + prev + "," + lex);
-      if (tagprev != null) {
-        featureList.add("pt=" + tagprev);
-        // bigram tag-1, w
-        featureList.add("pt,w=" + tagprev + "," + lex);
-      }
+      contexts[f++] = feature("pw,w=", prev, lex);
       if (prevprev != null) {
-        featureList.add("ppw=" + prevprev);
-        if (tagprevprev != null) {
-          // bigram tag-2,tag-1
-          featureList.add("pt2,pt1=" + tagprevprev + "," + tagprev);
-        }
+        contexts[f++] = feature("ppw=", prevprev);
       }
     }
-
     if (next != null) {
-      featureList.add("nw=" + next);
+      contexts[f++] = feature("nw=", next);
       if (nextnext != null) {
-        featureList.add("nnw=" + nextnext);
-
+        contexts[f++] = feature("nnw=", nextnext);
       }
     }
-    final String[] contexts = featureList
-        .toArray(new String[featureList.size()]);
-    if (this.contextsCache != null) {
-      this.contextsCache.put(cacheKey, contexts);
-    }
     return contexts;
   }
 
+  /**
+   * Build a feature from its name and value.
+   * 
+   * @param name
+   *          the feature name
+   * @param value
+   *          the value
+   * @return the feature
+   */
+  private String feature(final String name, final String value) {
+    return feature(name, value, 0, value.length());
+  }
+
+  /**
+   * Build a feature from its name and a part of a value.
+   * 
+   * @param name
+   *          the feature name
+   * @param value
+   *          the value
+   * @param start
+   *          the start of the part of the value
+   * @param end
+   *          the end of the part of the value
+   * @return the feature
+   */
+  private String feature(final String name, final String value,
+      final int start, final int end) {
+    this.featureBuilder.setLength(0);
+    this.featureBuilder.append(name).append(value, start, end);
+    return build();
+  }
+
+  /**
+   * Build a bigram feature from its name and two values.
+   * 
+   * @param name
+   *          the feature name
+   * @param first
+   *          the first value
+   * @param second
+   *          the second value
+   * @return the feature
+   */
+  private String feature(final String name, final String first,
+      final String second) {
+    this.featureBuilder.setLength(0);
+    this.featureBuilder.append(name).append(first).append(',').append(second);
+    return build();
+  }
+
+  /**
+   * Get a feature without value.
+   * 
+   * @param name
+   *          the feature name
+   * @return the feature
+   */
+  private String constant(final String name) {
+    if (this.hashedIds == null) {
+      return name;
+    }
+    this.featureBuilder.setLength(0);
+    this.featureBuilder.append(name);
+    return build();
+  }
+
+  /**
+   * Get the feature in the buffer, or its hashed id if features are hashed.
+   * 
+   * @return the feature
+   */
+  private String build() {
+    if (this.hashedIds == null) {
+      return this.featureBuilder.toString();
+    }
+    // 32 bit FNV-1a
+    int hash = 0x811C9DC5;
+    for (int i = 0; i < this.featureBuilder.length(); i++) {
+      hash ^= this.featureBuilder.charAt(i);
+      hash *= 0x01000193;
+    }
+    final int id = hash & (this.hashedIds.length - 1);
+    String predicate = this.hashedIds[id];
+    if (predicate == null) {
+      // racing generators store equal strings, so the race is harmless
+      predicate = "#" + Integer.toString(id, 36);
+      this.hashedIds[id] = predicate;
+    }
+    return predicate;
+  }
+
 }
@@ -73,6 +73,9 @@ public class FixedTrainer extends AbstractTrainer {
       } catch (final InvalidFormatException e) {
         e.printStackTrace();
       }
+    } else if (featureSet.equalsIgnoreCase("Hashed")) {
+      posTaggerFactory = new HashedFactory(ngramDictionary, null,
+          Flags.getHashBits(params));
     } else {
       try {
         posTaggerFactory = POSTaggerFactory.create(
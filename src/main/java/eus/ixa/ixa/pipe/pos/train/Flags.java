@@ -23,8 +23,21 @@ public class Flags {
    */
   public static final int DEFAULT_BEAM_SIZE = 3;
   public static final int DEFAULT_FOLDS_VALUE = 10;
+  /**
+   * Default number of folds trained at the same time in cross validation.
+   */
+  public static final int DEFAULT_FOLD_THREADS = 1;
   public static final String DEFAULT_EVALUATE_MODEL = "off";
   public static final String DEFAULT_FEATURESET_FLAG = "Baseline";
+  /**
+   * Default number of hash bits of the Hashed feature set.
+   */
+  public static final int DEFAULT_HASH_BITS = 20;
+  /**
+   * Maximum number of hash bits of the Hashed feature set; every context
+   * generator keeps a table of 2^bits predicate strings.
+   */
+  public static final int MAX_HASH_BITS = 24;
   public static final String DEFAULT_DICT_PATH = "off";
   public static final int DEFAULT_DICT_CUTOFF = -1;
   public static final String DEFAULT_EVAL_FORMAT = "opennlp";
@@ -97,6 +110,21 @@ public class Flags {
     return featureSet;
   }
 
+  public static Integer getHashBits(final TrainingParameters params) {
+    Integer hashBits = null;
+    if (params.getSettings().get("HashBits") == null) {
+      hashBits = Flags.DEFAULT_HASH_BITS;
+    } else {
+      hashBits = Integer.parseInt(params.getSettings().get("HashBits"));
+      if (hashBits < 1 || hashBits > Flags.MAX_HASH_BITS) {
+        throw new IllegalArgumentException(
+            "HashBits must be between 1 and " + Flags.MAX_HASH_BITS + ": "
+                + hashBits);
+      }
+    }
+    return hashBits;
+  }
+
   public static String getDictionaryFeatures(final TrainingParameters params) {
     String dictionaryFlag = null;
     if (params.getSettings().get("DictionaryFeatures") != null) {
@@ -137,6 +165,20 @@ public class Flags {
     return folds;
   }
 
+  public static Integer getFoldThreads(final TrainingParameters params) {
+    Integer foldThreads = null;
+    if (params.getSettings().get("FoldThreads") == null) {
+      foldThreads = Flags.DEFAULT_FOLD_THREADS;
+    } else {
+      foldThreads = Integer.parseInt(params.getSettings().get("FoldThreads"));
+      if (foldThreads < 1) {
+        throw new IllegalArgumentException(
+            "FoldThreads must be at least 1: " + foldThreads);
+      }
+    }
+    return foldThreads;
+  }
+
   public static void modelException() {
     System.err
         .println("Please provide a model in the OutputModel field in the parameters file!");
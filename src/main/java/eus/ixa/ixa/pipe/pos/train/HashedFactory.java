@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.train;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.postag.POSContextGenerator;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.TagDictionary;
+
+/**
+ * Extends the POSTagger Factory with the baseline features hashed into a
+ * fixed number of ids. The number of hash bits is stored in the model
+ * manifest, so the model is tagged with the same hash space it was trained
+ * with.
+ * 
+ * @author ragerri
+ * @version 2015-04-26
+ */
+public class HashedFactory extends POSTaggerFactory {
+
+  /**
+   * The manifest entry storing the number of hash bits.
+   */
+  public static final String HASH_BITS_ENTRY = "ixa-pipe-pos-hash-bits";
+
+  /**
+   * The number of hash bits set for training, 0 if not set.
+   */
+  private int hashBits;
+
+  /**
+   * Creates a {@link HashedFactory} that provides the default implementation
+   * of the resources.
+   */
+  public HashedFactory() {
+  }
+
+  /**
+   * Creates a {@link HashedFactory}. Use this constructor to
+   * programmatically create a factory.
+   * 
+   * @param ngramDictionary
+   *          the ngrams dictionary
+   * @param posDictionary
+   *          the postags dictionary
+   * @param aHashBits
+   *          the number of hash bits, between 1 and
+   *          {@link Flags#MAX_HASH_BITS}
+   */
+  public HashedFactory(final Dictionary ngramDictionary,
+      final TagDictionary posDictionary, final int aHashBits) {
+    super(ngramDictionary, posDictionary);
+    setHashBits(aHashBits);
+  }
+
+  /**
+   * Set the number of hash bits of the model to be trained.
+   * 
+   * @param aHashBits
+   *          the number of hash bits, between 1 and
+   *          {@link Flags#MAX_HASH_BITS}
+   */
+  public final void setHashBits(final int aHashBits) {
+    if (aHashBits < 1 || aHashBits > Flags.MAX_HASH_BITS) {
+      throw new IllegalArgumentException("Hash bits must be between 1 and "
+          + Flags.MAX_HASH_BITS + ": " + aHashBits);
+    }
+    this.hashBits = aHashBits;
+  }
+
+  /**
+   * Get the number of hash bits: the one set for training or else the one
+   * stored in the model manifest.
+   * 
+   * @return the number of hash bits
+   */
+  public final int getHashBits() {
+    if (this.hashBits > 0) {
+      return this.hashBits;
+    }
+    if (this.artifactProvider != null) {
+      final String bits = this.artifactProvider
+          .getManifestProperty(HASH_BITS_ENTRY);
+      if (bits != null) {
+        return Integer.parseInt(bits);
+      }
+    }
+    return Flags.DEFAULT_HASH_BITS;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.util.BaseToolFactory#createManifestEntries()
+   */
+  @Override
+  public Map<String, String> createManifestEntries() {
+    final Map<String, String> entries = new HashMap<String, String>();
+    final Map<String, String> parentEntries = super.createManifestEntries();
+    if (parentEntries != null) {
+      entries.putAll(parentEntries);
+    }
+    entries.put(HASH_BITS_ENTRY, Integer.toString(getHashBits()));
+    return entries;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.postag.POSTaggerFactory#getPOSContextGenerator()
+   */
+  @Override
+  public final POSContextGenerator getPOSContextGenerator() {
+    return getPOSContextGenerator(0);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see opennlp.tools.postag.POSTaggerFactory#getPOSContextGenerator(int)
+   */
+  @Override
+  public final POSContextGenerator getPOSContextGenerator(final int cacheSize) {
+    return new BaselineContextGenerator(cacheSize, getDictionary(),
+        getHashBits());
+  }
+
+}
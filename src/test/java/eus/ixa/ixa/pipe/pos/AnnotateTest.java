@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertEquals;
+import ixa.kaflib.KAFDocument;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * Checks that tagging the sentences of a document in parallel gives the same
+ * annotation as tagging them sequentially, and that words without lemma are
+ * written.
+ *
+ * @author ragerri
+ * @version 2015-04-27
+ */
+public class AnnotateTest {
+
+  private static Annotate createAnnotator(final String parallel)
+      throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    final Properties properties = new Properties();
+    properties.setProperty("language", SyntheticData.LANG);
+    properties.setProperty("model", data.getModel().getAbsolutePath());
+    properties.setProperty("beamSize", "3");
+    properties.setProperty("multiwords", "false");
+    properties.setProperty("dictag", "false");
+    properties.setProperty("lemmatizerDict", data.getMappedLemmaDictionary()
+        .getAbsolutePath());
+    properties.setProperty("parallel", parallel);
+    return new Annotate(properties);
+  }
+
+  @Test
+  public void parallelAnnotationEqualsSequential() throws IOException {
+    final String[][] sentences = SyntheticData.get().tokens(
+        SyntheticData.SENTENCES, 30);
+    final Annotate sequential = createAnnotator("1");
+    final Annotate parallel = createAnnotator("4");
+    try {
+      final KAFDocument sequentialKaf = SyntheticData.toNAF(sentences);
+      sequential.annotatePOSToKAF(sequentialKaf);
+      final KAFDocument parallelKaf = SyntheticData.toNAF(sentences);
+      parallel.annotatePOSToKAF(parallelKaf);
+      assertEquals(sequentialKaf.toString(), parallelKaf.toString());
+      for (final int beamSize : new int[] { 1, 3 }) {
+        assertEquals(sequential.annotatePOSToCoNLL(
+            SyntheticData.toNAF(sentences), beamSize),
+            parallel.annotatePOSToCoNLL(SyntheticData.toNAF(sentences),
+                beamSize));
+      }
+    } finally {
+      sequential.close();
+      parallel.close();
+    }
+  }
+
+  @Test
+  public void unknownWordsWithoutLemma() throws IOException {
+    final Annotate annotator = createAnnotator("1");
+    try {
+      final String text = "Zzqxv .\n";
+      final StringWriter conll = new StringWriter();
+      annotator.annotateTokensToCoNLL(new BufferedReader(new StringReader(
+          text)), conll);
+      final String conllLine = "Zzqxv\tnull\t";
+      assertEquals(conllLine,
+          conll.toString().substring(0, conllLine.length()));
+      final StringWriter json = new StringWriter();
+      annotator.annotateTokensToJSON(new BufferedReader(new StringReader(
+          text)), json);
+      final String jsonToken = "{\"tokens\":[{\"word\":\"Zzqxv\",\"lemma\":null,";
+      assertEquals(jsonToken,
+          json.toString().substring(0, jsonToken.length()));
+    } finally {
+      annotator.close();
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.postag.POSModel;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.pos.train.BaselineContextGenerator;
+
+/**
+ * Checks that a compiled model scores every context within float rounding of
+ * the model it was compiled from.
+ *
+ * @author ragerri
+ * @version 2015-04-27
+ */
+public class MappedPOSModelTest {
+
+  /**
+   * Maximum difference of the probabilities of the compiled model.
+   */
+  private static final double TOLERANCE = 1e-5;
+
+  @Test
+  public void scoresWithinToleranceOfOriginal() throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    final MaxentModel original = MappedPOSModel.read(data.getModel())
+        .getPosModel();
+    final File compiled = File.createTempFile("synthetic-pos", ".mapped");
+    compiled.deleteOnExit();
+    MappedPOSModel.compile(MappedPOSModel.read(data.getModel()), compiled);
+    assertTrue(MappedPOSModel.isMappedModel(compiled));
+    final POSModel mappedModel = MappedPOSModel.read(compiled);
+    final MaxentModel mapped = mappedModel.getPosModel();
+    assertEquals(original.getNumOutcomes(), mapped.getNumOutcomes());
+    for (int i = 0; i < original.getNumOutcomes(); i++) {
+      assertEquals(original.getOutcome(i), mapped.getOutcome(i));
+    }
+    final BaselineContextGenerator generator = new BaselineContextGenerator(
+        null);
+    for (final String[][] sentence : data.sentences(50, 20, 11L)) {
+      for (int i = 0; i < sentence[0].length; i++) {
+        final String[] context = generator.getContext(i, sentence[0],
+            sentence[1], null);
+        assertArrayEquals(original.eval(context), mapped.eval(context),
+            TOLERANCE);
+      }
+    }
+  }
+
+}
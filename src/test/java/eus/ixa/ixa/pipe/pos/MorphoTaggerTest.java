@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ * Checks that tagging sentences through a reused token array gives the same
+ * postags as tagging every sentence in a new array.
+ *
+ * @author ragerri
+ * @version 2015-04-27
+ */
+public class MorphoTaggerTest {
+
+  private static MorphoTagger createTagger() throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty("model", SyntheticData.get().getModel()
+        .getAbsolutePath());
+    properties.setProperty("beamSize", "3");
+    return new MorphoTagger(properties);
+  }
+
+  private static void checkReusedArray(final MorphoTagger tagger,
+      final int beamSize) throws IOException {
+    final String[][] sentences = SyntheticData.get().tokens(
+        SyntheticData.SENTENCES, 12);
+    final String[] reused = new String[12];
+    final TaggedSentence reusedSentence = new TaggedSentence();
+    for (final String[] tokens : sentences) {
+      // the same sentence with one word changed, then the next sentence
+      for (int variant = 0; variant < 2; variant++) {
+        System.arraycopy(tokens, 0, reused, 0, reused.length);
+        if (variant == 0) {
+          reused[5] = reused[6];
+        }
+        reusedSentence.setTokens(reused);
+        tagger.tag(reusedSentence, beamSize);
+        final TaggedSentence fresh = new TaggedSentence(reused.clone());
+        tagger.tag(fresh, beamSize);
+        for (int i = 0; i < reused.length; i++) {
+          assertEquals(fresh.getTag(i), reusedSentence.getTag(i));
+          assertEquals(fresh.getProb(i), reusedSentence.getProb(i), 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void reusedArrayGreedy() throws IOException {
+    final MorphoTagger tagger = createTagger();
+    try {
+      checkReusedArray(tagger, 1);
+    } finally {
+      tagger.close();
+    }
+  }
+
+  @Test
+  public void reusedArrayBeamSearch() throws IOException {
+    final MorphoTagger tagger = createTagger();
+    try {
+      checkReusedArray(tagger, 3);
+    } finally {
+      tagger.close();
+    }
+  }
+
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos;
+
+import ixa.kaflib.KAFDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSA5Serializer;
+import morfologik.fsa.FSABuilder;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.TrainingParameters;
+import eus.ixa.ixa.pipe.lemma.MappedLemmatizer;
+import eus.ixa.ixa.pipe.pos.train.BaselineFactory;
+
+/**
+ * Small synthetic English-like corpus, model and dictionaries for the tests
+ * and benchmarks. Everything is generated from a fixed seed into a temporary
+ * directory, so they need no downloaded resources and every run uses the same
+ * data.
+ *
+ * @author ragerri
+ * @version 2015-04-23
+ */
+public final class SyntheticData {
+
+  /**
+   * The language of the synthetic data.
+   */
+  public static final String LANG = "en";
+  /**
+   * Number of sentences tagged in each benchmark operation.
+   */
+  public static final int SENTENCES = 64;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final long SEED = 42L;
+  private static final int WORDS_PER_TAG = 60;
+  private static final int TRAINING_SENTENCES = 600;
+  private static final int TRAINING_SENTENCE_LENGTH = 20;
+  private static final int MULTIWORDS = 400;
+  private static final int TEST_SENTENCES = 200;
+  /**
+   * One in this number of reference postags of the test set is wrong.
+   */
+  private static final int TEST_NOISE = 20;
+  private static final String[] SYLLABLES = { "ba", "ke", "lo", "mi", "nu",
+      "ra", "se", "ti", "vo", "za", "de", "fo", "gu", "pi", "sha", "tre" };
+  /**
+   * Sentence templates; sentences are made by chaining them.
+   */
+  private static final String[][] TEMPLATES = {
+      { "DT", "JJ", "NN", "VBZ", "IN", "DT", "NNS" },
+      { "PRP", "VBD", "DT", "NN", "RB" },
+      { "NNP", "VBZ", "JJ", "CC", "JJ" },
+      { "DT", "NNS", "VBD", "IN", "NNP" },
+      { "PRP", "RB", "VBZ", "DT", "JJ", "NN" } };
+
+  private static SyntheticData instance;
+
+  private final File directory;
+  private final Map<String, List<String>> wordsByTag = new LinkedHashMap<String, List<String>>();
+  private final Map<String, String> lemmas = new LinkedHashMap<String, String>();
+  private File model;
+  private File testSet;
+  private File mappedLemmaDict;
+  private File morfologikLemmaDict;
+  private File morfologikTaggerDict;
+
+  private SyntheticData() throws IOException {
+    this.directory = File.createTempFile("ixa-pipe-pos-bench", "");
+    if (!this.directory.delete() || !this.directory.mkdir()) {
+      throw new IOException("Could not create " + this.directory);
+    }
+    final Random random = new Random(SEED);
+    for (final String[] template : TEMPLATES) {
+      for (final String tag : template) {
+        if (!this.wordsByTag.containsKey(tag)) {
+          this.wordsByTag.put(tag, createWords(tag, random));
+        }
+      }
+    }
+    this.wordsByTag.put(".", Arrays.asList("."));
+    this.lemmas.put(".\t.", ".");
+  }
+
+  /**
+   * Get the synthetic data of this JVM, generating it the first time.
+   *
+   * @return the synthetic data
+   * @throws IOException
+   *           if the temporary directory can not be created
+   */
+  public static synchronized SyntheticData get() throws IOException {
+    if (instance == null) {
+      instance = new SyntheticData();
+    }
+    return instance;
+  }
+
+  /**
+   * Create the words of a postag. Suffixes follow the tag so that the model
+   * has something to learn from the suffix features.
+   */
+  private List<String> createWords(final String tag, final Random random) {
+    final List<String> words = new ArrayList<String>();
+    while (words.size() < WORDS_PER_TAG) {
+      final StringBuilder sb = new StringBuilder();
+      final int syllables = 1 + random.nextInt(3);
+      for (int i = 0; i < syllables; i++) {
+        sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+      }
+      final String stem = sb.toString();
+      String word = stem;
+      if (tag.equals("NNS") || tag.equals("VBZ")) {
+        word = stem + "s";
+      } else if (tag.equals("VBD")) {
+        word = stem + "ed";
+      } else if (tag.equals("RB")) {
+        word = stem + "ly";
+      } else if (tag.equals("JJ")) {
+        word = stem + "ous";
+      } else if (tag.equals("NNP")) {
+        word = Character.toUpperCase(stem.charAt(0)) + stem.substring(1);
+      }
+      final String key = word + "\t" + tag;
+      if (!this.lemmas.containsKey(key)) {
+        words.add(word);
+        this.lemmas.put(key, tag.equals("NNP") || tag.equals("RB")
+            || tag.equals("JJ") ? word : stem);
+      }
+    }
+    return words;
+  }
+
+  /**
+   * Generate tagged sentences ending with a full stop.
+   *
+   * @param number
+   *          the number of sentences
+   * @param length
+   *          the number of tokens of each sentence
+   * @param seed
+   *          the random seed
+   * @return the sentences as a list of {tokens, postags} arrays
+   */
+  public List<String[][]> sentences(final int number, final int length,
+      final long seed) {
+    final Random random = new Random(seed);
+    final List<String[][]> sentences = new ArrayList<String[][]>(number);
+    for (int n = 0; n < number; n++) {
+      final String[] tokens = new String[length];
+      final String[] tags = new String[length];
+      int i = 0;
+      while (i < length - 1) {
+        final String[] template = TEMPLATES[random.nextInt(TEMPLATES.length)];
+        for (int j = 0; j < template.length && i < length - 1; j++, i++) {
+          final List<String> words = this.wordsByTag.get(template[j]);
+          tags[i] = template[j];
+          tokens[i] = words.get(random.nextInt(words.size()));
+        }
+      }
+      tags[length - 1] = ".";
+      tokens[length - 1] = ".";
+      sentences.add(new String[][] { tokens, tags });
+    }
+    return sentences;
+  }
+
+  /**
+   * Get the tokens of generated sentences.
+   *
+   * @param number
+   *          the number of sentences
+   * @param length
+   *          the number of tokens of each sentence
+   * @return the tokens of each sentence
+   */
+  public String[][] tokens(final int number, final int length) {
+    final List<String[][]> sentences = sentences(number, length, SEED + length);
+    final String[][] tokens = new String[number][];
+    for (int i = 0; i < number; i++) {
+      tokens[i] = sentences.get(i)[0];
+    }
+    return tokens;
+  }
+
+  /**
+   * Get the file of a maxent model with the Baseline features trained on
+   * generated sentences, training it the first time.
+   *
+   * @return the model file
+   * @throws IOException
+   *           if the model can not be trained or written
+   */
+  public synchronized File getModel() throws IOException {
+    if (this.model == null) {
+      final List<POSSample> samples = new ArrayList<POSSample>();
+      for (final String[][] sentence : sentences(TRAINING_SENTENCES,
+          TRAINING_SENTENCE_LENGTH, SEED)) {
+        samples.add(new POSSample(sentence[0], sentence[1]));
+      }
+      final TrainingParameters params = new TrainingParameters();
+      params.put("Algorithm", "MAXENT");
+      params.put("Iterations", "50");
+      params.put("Cutoff", "1");
+      final POSModel posModel = POSTaggerME.train(LANG,
+          ObjectStreamUtils.createObjectStream(samples), params,
+          POSTaggerFactory.create(BaselineFactory.class.getName(), null, null));
+      final File modelFile = new File(this.directory, "synthetic-pos.bin");
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(
+          modelFile));
+      try {
+        posModel.serialize(out);
+      } finally {
+        out.close();
+      }
+      this.model = modelFile;
+    }
+    return this.model;
+  }
+
+  /**
+   * Get a test set of generated sentences in word_postag format, one sentence
+   * per line, writing it the first time. Some reference postags are replaced
+   * by another postag, so that evaluations find errors.
+   *
+   * @return the test set file
+   * @throws IOException
+   *           if the test set can not be written
+   */
+  public synchronized File getTestSet() throws IOException {
+    if (this.testSet == null) {
+      final Random random = new Random(SEED + 1);
+      final String[] tags = this.wordsByTag.keySet().toArray(new String[0]);
+      final File testFile = new File(this.directory, "synthetic-test.txt");
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(
+          testFile), UTF_8);
+      try {
+        for (final String[][] sentence : sentences(TEST_SENTENCES,
+            TRAINING_SENTENCE_LENGTH, SEED + 1)) {
+          for (int i = 0; i < sentence[0].length; i++) {
+            String tag = sentence[1][i];
+            if (random.nextInt(TEST_NOISE) == 0) {
+              tag = tags[random.nextInt(tags.length)];
+            }
+            writer.write(i == 0 ? "" : " ");
+            writer.write(sentence[0][i] + "_" + tag);
+          }
+          writer.write("\n");
+        }
+      } finally {
+        writer.close();
+      }
+      this.testSet = testFile;
+    }
+    return this.testSet;
+  }
+
+  /**
+   * Get the lemmatizer dictionary as word\tlemma\tpostag lines.
+   *
+   * @return the dictionary
+   */
+  public InputStream getLemmaDictionary() {
+    final StringBuilder sb = new StringBuilder();
+    for (final Map.Entry<String, String> entry : this.lemmas.entrySet()) {
+      final String[] wordTag = entry.getKey().split("\t");
+      sb.append(wordTag[0]).append('\t').append(entry.getValue()).append('\t')
+          .append(wordTag[1]).append('\n');
+    }
+    return new ByteArrayInputStream(sb.toString().getBytes(UTF_8));
+  }
+
+  /**
+   * Get the lemmatizer dictionary compiled into the memory mapped format,
+   * compiling it the first time.
+   *
+   * @return the binary dictionary file
+   * @throws IOException
+   *           if the dictionary can not be written
+   */
+  public synchronized File getMappedLemmaDictionary() throws IOException {
+    if (this.mappedLemmaDict == null) {
+      final File dictFile = new File(this.directory, "synthetic-lemmas.bin");
+      MappedLemmatizer.compile(getLemmaDictionary(), dictFile);
+      this.mappedLemmaDict = dictFile;
+    }
+    return this.mappedLemmaDict;
+  }
+
+  /**
+   * Get the lemmatizer dictionary built as a Morfologik FSA, building it the
+   * first time.
+   *
+   * @return the FSA dictionary file
+   * @throws IOException
+   *           if the dictionary can not be written
+   */
+  public synchronized File getMorfologikLemmaDictionary() throws IOException {
+    if (this.morfologikLemmaDict == null) {
+      final List<String[]> entries = new ArrayList<String[]>();
+      for (final Map.Entry<String, String> entry : this.lemmas.entrySet()) {
+        final String[] wordTag = entry.getKey().split("\t");
+        entries.add(new String[] { wordTag[0], entry.getValue(), wordTag[1] });
+      }
+      this.morfologikLemmaDict = writeMorfologikDictionary(entries,
+          "synthetic-lemmas");
+    }
+    return this.morfologikLemmaDict;
+  }
+
+  /**
+   * Get a monosemic postag dictionary built as a Morfologik FSA, with the
+   * words of every other postag, building it the first time.
+   *
+   * @return the FSA dictionary file
+   * @throws IOException
+   *           if the dictionary can not be written
+   */
+  public synchronized File getMorfologikTaggerDictionary() throws IOException {
+    if (this.morfologikTaggerDict == null) {
+      final List<String[]> entries = new ArrayList<String[]>();
+      int tagNumber = 0;
+      for (final Map.Entry<String, List<String>> entry : this.wordsByTag
+          .entrySet()) {
+        if (tagNumber++ % 2 == 0) {
+          for (final String word : entry.getValue()) {
+            entries.add(new String[] { word.toLowerCase(), word.toLowerCase(),
+                entry.getKey() });
+          }
+        }
+      }
+      this.morfologikTaggerDict = writeMorfologikDictionary(entries,
+          "synthetic-tagger");
+    }
+    return this.morfologikTaggerDict;
+  }
+
+  /**
+   * Write a Morfologik dictionary and its metadata. Base forms use the
+   * standard suffix encoding: a letter counting from 'A' the bytes to remove
+   * from the end of the surface form followed by the bytes to append.
+   */
+  private File writeMorfologikDictionary(final List<String[]> entries,
+      final String name) throws IOException {
+    final byte[][] sequences = new byte[entries.size()][];
+    for (int i = 0; i < entries.size(); i++) {
+      final String[] entry = entries.get(i);
+      final byte[] word = entry[0].getBytes(UTF_8);
+      final byte[] lemma = entry[1].getBytes(UTF_8);
+      int common = 0;
+      while (common < word.length && common < lemma.length
+          && word[common] == lemma[common]) {
+        common++;
+      }
+      final String encoded = entry[0] + "+" + (char) ('A' + word.length - common)
+          + new String(lemma, common, lemma.length - common, UTF_8) + "+"
+          + entry[2];
+      sequences[i] = encoded.getBytes(UTF_8);
+    }
+    Arrays.sort(sequences, new Comparator<byte[]>() {
+      public int compare(final byte[] first, final byte[] second) {
+        final int length = Math.min(first.length, second.length);
+        for (int i = 0; i < length; i++) {
+          final int cmp = (first[i] & 0xff) - (second[i] & 0xff);
+          if (cmp != 0) {
+            return cmp;
+          }
+        }
+        return first.length - second.length;
+      }
+    });
+    final FSA fsa = FSABuilder.build(sequences);
+    final File dictFile = new File(this.directory, name + ".dict");
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(
+        dictFile));
+    try {
+      new FSA5Serializer().serialize(fsa, out);
+    } finally {
+      out.close();
+    }
+    final Writer info = new OutputStreamWriter(new FileOutputStream(new File(
+        this.directory, name + ".info")), UTF_8);
+    try {
+      info.write("fsa.dict.separator=+\n");
+      info.write("fsa.dict.encoding=UTF-8\n");
+      info.write("fsa.dict.uses-prefixes=false\n");
+      info.write("fsa.dict.uses-infixes=false\n");
+    } finally {
+      info.close();
+    }
+    return dictFile;
+  }
+
+  /**
+   * Get a multiword dictionary, as multiword\tlemma\tpostag\tambiguity lines,
+   * with determiner and noun pairs and preposition, determiner and noun
+   * triples.
+   *
+   * @return the dictionary
+   */
+  public InputStream getMultiWordDictionary() {
+    final Random random = new Random(SEED);
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < MULTIWORDS; i++) {
+      final List<String> words = new ArrayList<String>();
+      if (i % 2 == 0) {
+        words.add(randomWord("IN", random));
+      }
+      words.add(randomWord("DT", random));
+      words.add(randomWord("NN", random));
+      final StringBuilder multiWord = new StringBuilder();
+      for (final String word : words) {
+        if (multiWord.length() > 0) {
+          multiWord.append('#');
+        }
+        multiWord.append(word);
+      }
+      sb.append(multiWord).append('\t')
+          .append(multiWord.toString().replace('#', '_')).append("\tNN\tfixed\n");
+    }
+    return new ByteArrayInputStream(sb.toString().getBytes(UTF_8));
+  }
+
+  private String randomWord(final String tag, final Random random) {
+    final List<String> words = this.wordsByTag.get(tag);
+    return words.get(random.nextInt(words.size()));
+  }
+
+  /**
+   * Create a NAF document containing the word forms of some sentences.
+   *
+   * @param sentences
+   *          the tokens of each sentence
+   * @return the NAF document
+   */
+  public static KAFDocument toNAF(final String[][] sentences) {
+    final KAFDocument kaf = new KAFDocument(LANG, "v1.naf");
+    int offset = 0;
+    for (int sent = 0; sent < sentences.length; sent++) {
+      for (final String token : sentences[sent]) {
+        kaf.newWF(token, offset, sent + 1);
+        offset += token.length() + 1;
+      }
+    }
+    return kaf;
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.postag.POSTaggerEvaluationMonitor;
+import opennlp.tools.util.eval.EvaluationMonitor;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+
+/**
+ * Checks that evaluating the test set in parallel shards gives the accuracy
+ * and the listener events of the single threaded evaluation.
+ *
+ * @author ragerri
+ * @version 2015-04-27
+ */
+public class EvaluateTest {
+
+  private static List<String> evaluate(final int threads,
+      final List<Double> accuracies) throws IOException {
+    final SyntheticData data = SyntheticData.get();
+    final Evaluate evaluate = new Evaluate(data.getTestSet().getPath(), data
+        .getModel().getPath(), "3", threads);
+    final Recorder recorder = new Recorder();
+    final List<EvaluationMonitor<POSSample>> listeners = new LinkedList<EvaluationMonitor<POSSample>>();
+    listeners.add(recorder);
+    accuracies.add(evaluate.evaluate(listeners));
+    return recorder.events;
+  }
+
+  @Test
+  public void shardedEvaluationEqualsSingleThreaded() throws IOException {
+    final List<Double> accuracies = new ArrayList<Double>();
+    final List<String> single = evaluate(1, accuracies);
+    final List<String> sharded = evaluate(4, accuracies);
+    assertEquals(accuracies.get(0), accuracies.get(1), 1e-12);
+    assertEquals(single, sharded);
+    assertTrue(single.contains("missclassified"));
+  }
+
+  /**
+   * Records every classified sample in order.
+   */
+  private static final class Recorder implements POSTaggerEvaluationMonitor {
+
+    private final List<String> events = new ArrayList<String>();
+
+    public void correctlyClassified(final POSSample reference,
+        final POSSample prediction) {
+      this.events.add("correct");
+      this.events.add(reference + "\t" + prediction);
+    }
+
+    public void missclassified(final POSSample reference,
+        final POSSample prediction) {
+      this.events.add("missclassified");
+      this.events.add(reference + "\t" + prediction);
+    }
+  }
+
+}
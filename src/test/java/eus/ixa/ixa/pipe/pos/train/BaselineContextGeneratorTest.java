@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.pos.train;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.util.StringList;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.pos.SyntheticData;
+
+/**
+ * Checks that {@link BaselineContextGenerator} generates the features of the
+ * original list and regular expression based generator, in the same order,
+ * for every tag history of a sentence, and that hashed features are the
+ * hashes of those features.
+ *
+ * @author ragerri
+ * @version 2015-04-27
+ */
+public class BaselineContextGeneratorTest {
+
+  private static final Pattern HAS_CAP = Pattern.compile("[A-Z]");
+  private static final Pattern HAS_NUM = Pattern.compile("[0-9]");
+  private static final String[] TAGS = { "NN", "VBZ", "DT", "JJ" };
+
+  /**
+   * The features of the original generator.
+   */
+  private static String[] original(final int index, final String[] tokens,
+      final String[] tags, final Dictionary dict) {
+    final String lex = tokens[index];
+    String next = null, nextnext = null, prev = null, prevprev = null;
+    String tagprev = null, tagprevprev = null;
+    if (tokens.length > index + 1) {
+      next = tokens[index + 1];
+      nextnext = tokens.length > index + 2 ? tokens[index + 2] : "*SE*";
+    } else {
+      next = "*SE*";
+    }
+    if (index - 1 >= 0) {
+      prev = tokens[index - 1];
+      tagprev = tags[index - 1];
+      if (index - 2 >= 0) {
+        prevprev = tokens[index - 2];
+        tagprevprev = tags[index - 2];
+      } else {
+        prevprev = "*SB*";
+      }
+    } else {
+      prev = "*SB*";
+    }
+    final List<String> features = new ArrayList<String>();
+    features.add("default");
+    features.add("w=" + lex);
+    if (dict == null || !dict.contains(new StringList(lex))) {
+      for (int li = 0; li < 4; li++) {
+        features.add("suf=" + lex.substring(Math.max(lex.length() - li - 1, 0)));
+      }
+      for (int li = 0; li < 4; li++) {
+        features.add("pre=" + lex.substring(0, Math.min(li + 1, lex.length())));
+      }
+      if (lex.indexOf('-') != -1) {
+        features.add("h");
+      }
+      if (HAS_CAP.matcher(lex).find()) {
+        features.add("c");
+      }
+      if (HAS_NUM.matcher(lex).find()) {
+        features.add("d");
+      }
+    }
+    features.add("pw=" + prev);
+    features.add("pw,w=" + prev + "," + lex);
+    if (tagprev != null) {
+      features.add("pt=" + tagprev);
+      features.add("pt,w=" + tagprev + "," + lex);
+    }
+    if (prevprev != null) {
+      features.add("ppw=" + prevprev);
+      if (tagprevprev != null) {
+        features.add("pt2,pt1=" + tagprevprev + "," + tagprev);
+      }
+    }
+    features.add("nw=" + next);
+    if (nextnext != null) {
+      features.add("nnw=" + nextnext);
+    }
+    return features.toArray(new String[features.size()]);
+  }
+
+  /**
+   * The predicate of a hashed feature.
+   */
+  private static String hash(final String feature, final int hashBits) {
+    int hash = 0x811C9DC5;
+    for (int i = 0; i < feature.length(); i++) {
+      hash ^= feature.charAt(i);
+      hash *= 0x01000193;
+    }
+    return "#" + Integer.toString(hash & ((1 << hashBits) - 1), 36);
+  }
+
+  /**
+   * Generated sentences plus words with hyphens, capitals and digits.
+   */
+  private static List<String[][]> sentences() throws IOException {
+    final List<String[][]> sentences = new ArrayList<String[][]>(SyntheticData
+        .get().sentences(50, 12, 7L));
+    sentences.add(new String[][] {
+        { "Well-known", "A", "in", "1999", "x", "-", "B2B" },
+        { "JJ", "DT", "IN", "CD", "NN", ":", "NNP" } });
+    sentences.add(new String[][] { { "Alone" }, { "NNP" } });
+    return sentences;
+  }
+
+  /**
+   * The tag histories of a sentence: its own postags and random ones, as
+   * different hypotheses of the beam.
+   */
+  private static List<String[]> histories(final String[] tags,
+      final Random random) {
+    final List<String[]> histories = new ArrayList<String[]>();
+    histories.add(tags);
+    for (int h = 0; h < 3; h++) {
+      final String[] history = new String[tags.length];
+      for (int i = 0; i < tags.length; i++) {
+        history[i] = TAGS[random.nextInt(TAGS.length)];
+      }
+      histories.add(history);
+    }
+    return histories;
+  }
+
+  private static void checkFeatures(final BaselineContextGenerator generator,
+      final Dictionary dict, final int hashBits) throws IOException {
+    final Random random = new Random(13L);
+    for (final String[][] sentence : sentences()) {
+      for (final String[] history : histories(sentence[1], random)) {
+        for (int i = 0; i < sentence[0].length; i++) {
+          final String[] expected = original(i, sentence[0], history, dict);
+          if (hashBits > 0) {
+            for (int f = 0; f < expected.length; f++) {
+              expected[f] = hash(expected[f], hashBits);
+            }
+          }
+          assertArrayEquals(expected,
+              generator.getContext(i, sentence[0], history, null));
+        }
+      }
+    }
+  }
+
+  /**
+   * Generate the features of every sentence of 12 tokens, and of the sentence
+   * with one word changed, copying them into the same token array.
+   */
+  private static void checkReusedArray(
+      final BaselineContextGenerator generator, final boolean startSentence)
+      throws IOException {
+    final String[] tokens = new String[12];
+    final String[] tags = new String[12];
+    for (final String[][] sentence : sentences()) {
+      if (sentence[0].length != tokens.length) {
+        continue;
+      }
+      for (int variant = 0; variant < 2; variant++) {
+        System.arraycopy(sentence[0], 0, tokens, 0, tokens.length);
+        System.arraycopy(sentence[1], 0, tags, 0, tags.length);
+        if (variant == 1) {
+          tokens[5] = "Changed-" + tokens[5];
+        }
+        if (startSentence) {
+          generator.startSentence();
+        }
+        for (int i = 0; i < tokens.length; i++) {
+          assertArrayEquals(original(i, tokens, tags, null),
+              generator.getContext(i, tokens, tags, null));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void sameFeaturesAsOriginal() throws IOException {
+    checkFeatures(new BaselineContextGenerator(0, null), null, 0);
+  }
+
+  @Test
+  public void sameFeaturesAsOriginalWithCache() throws IOException {
+    checkFeatures(new BaselineContextGenerator(8, null), null, 0);
+  }
+
+  @Test
+  public void sameFeaturesAsOriginalWithDictionary() throws IOException {
+    final Dictionary dict = new Dictionary();
+    for (final String[][] sentence : sentences()) {
+      dict.put(new StringList(sentence[0][0]));
+    }
+    checkFeatures(new BaselineContextGenerator(0, dict), dict, 0);
+  }
+
+  @Test
+  public void reusedTokenArray() throws IOException {
+    checkReusedArray(new BaselineContextGenerator(8, null), false);
+  }
+
+  @Test
+  public void reusedTokenArrayAfterStartSentence() throws IOException {
+    checkReusedArray(new BaselineContextGenerator(8, null), true);
+  }
+
+  @Test
+  public void hashedFeaturesAreHashesOfOriginal() throws IOException {
+    checkFeatures(new BaselineContextGenerator(0, null, 12), null, 12);
+  }
+
+}